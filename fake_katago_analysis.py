@@ -0,0 +1,95 @@
+#!/usr/bin/env python3
+# 模拟KataGo分析引擎，供KataGoAnalysisClientTest使用，不需要真正的KataGo和模型
+# 命令行与KataGo相同：fake_katago_analysis.py analysis -model M -config C [-override-config k=v,...]
+# 和真正的引擎一样，胜率的报告方式只在启动时从配置读取（默认BLACK），-override-config可以覆盖；
+# 查询里的overrideSettings不能修改它，只会得到一条警告。
+# 按行读取JSON查询，输入暂时没有新查询时把攒下的响应打乱顺序输出，中间夹杂搜索中的响应和不认识的id。
+# 从轮到的一方看，每个局面的目差等于手数、胜率0.6、领地0.5，再按报告方式换算。
+# 配置中的fakeExitAfter = N让引擎读完N个查询后不响应直接退出
+import json
+import os
+import random
+import select
+import sys
+
+
+def read_settings(argv):
+    settings = {}
+    for k in range(len(argv) - 1):
+        if argv[k] == "-config":
+            with open(argv[k + 1]) as config:
+                for line in config:
+                    line = line.split("#", 1)[0]
+                    if "=" in line:
+                        key, value = line.split("=", 1)
+                        settings[key.strip()] = value.strip()
+    for k in range(len(argv) - 1):
+        if argv[k] == "-override-config":
+            for pair in argv[k + 1].split(","):
+                key, value = pair.split("=", 1)
+                settings[key.strip()] = value.strip()
+    return settings
+
+
+settings = read_settings(sys.argv)
+report = settings.get("reportAnalysisWinratesAs", "BLACK")
+exit_after = int(settings.get("fakeExitAfter", "-1"))
+rng = random.Random(7)
+pending = []
+queries = 0
+
+
+def flush():
+    rng.shuffle(pending)
+    for response in pending:
+        print(json.dumps(response))
+    sys.stdout.flush()
+    del pending[:]
+
+
+def queries_from_stdin():
+    buffer = b""
+    while True:
+        if b"\n" not in buffer and not select.select([0], [], [], 0.05)[0]:
+            flush()
+            select.select([0], [], [])
+        if b"\n" not in buffer:
+            chunk = os.read(0, 65536)
+            if not chunk:
+                return
+            buffer += chunk
+            continue
+        line, buffer = buffer.split(b"\n", 1)
+        if line.strip():
+            yield json.loads(line.decode("utf-8"))
+
+
+for query in queries_from_stdin():
+    queries += 1
+    if queries == exit_after:
+        sys.exit(1)
+    for key in query.get("overrideSettings") or {}:
+        if key == "reportAnalysisWinratesAs":
+            pending.append({"id": query["id"], "warning": "Unknown or disallowed overrideSettings field: " + key})
+    size = query["boardXSize"]
+    for turn in query["analyzeTurns"]:
+        player = "B" if turn % 2 == 0 else "W"
+        # 轮到的一方看是正值，按黑方或白方报告时另一方轮到的局面要换号
+        flip = (report == "BLACK" and player == "W") or (report == "WHITE" and player == "B")
+        sign = -1 if flip else 1
+        winrate = 0.4 if flip else 0.6
+        response = {
+            "id": query["id"],
+            "turnNumber": turn,
+            "moveInfos": [
+                {"move": "D4", "visits": 30, "winrate": winrate, "scoreLead": sign * turn, "order": 0, "pv": ["D4"]},
+                {"move": "Q16", "visits": 10, "winrate": 0.5, "scoreLead": 0, "order": 1, "pv": ["Q16"]},
+            ],
+            "rootInfo": {"winrate": winrate, "scoreLead": sign * turn, "visits": 40, "currentPlayer": player},
+            "ownership": [sign * 0.5] * (size * size),
+        }
+        searching = dict(response, isDuringSearch=True, rootInfo=dict(response["rootInfo"], scoreLead=-99))
+        pending.append(searching)
+        pending.append(dict(response, isDuringSearch=False))
+    pending.append({"id": "unknown", "turnNumber": 0, "rootInfo": {"winrate": 0, "scoreLead": 0, "visits": 0}})
+flush()
@@ -0,0 +1,134 @@
+package com.monki.core;
+
+/**
+ * Tromp-Taylor数子法计分
+ * 死子当作空点，用位平面对空点逐块做洪水填充，只与一方棋子相邻的空区域归该方，
+ * 一方的得分为活棋的子数加所围的空点数，与双方都相邻或都不相邻的空区域不计。
+ * 缓冲区在构造时分配好，计分不分配对象。一个实例只能由一个线程使用
+ */
+public final class AreaScorer {
+    private final BoardGeometry geometry;
+    private final int words;
+    private final long[] black;//黑方活棋
+    private final long[] white;//白方活棋
+    private final long[] empty;//还没填充的空点（含死子）
+    private final long[] region;//正在填充的空区域
+    private final long[] grown;
+    private final long[] blackArea;//最近一次计分黑方的棋子和地
+    private final long[] whiteArea;
+    private int blackScore;
+    private int whiteScore;
+
+    public AreaScorer(BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.words = geometry.words;
+        black = new long[words];
+        white = new long[words];
+        empty = new long[words];
+        region = new long[words];
+        grown = new long[words];
+        blackArea = new long[words];
+        whiteArea = new long[words];
+    }
+
+    /**
+     * 计分
+     * @param board 局面，路数须与构造时一致
+     * @param dead 死子的位集合，没有时为null
+     * @return 白方领先的子数（不含贴目），负数表示黑方领先
+     */
+    public int score(BitBoard board, long[] dead) {
+        long[] onBoard = geometry.onBoard();
+        long[] b = board.plane(BitBoard.BLACK);
+        long[] w = board.plane(BitBoard.WHITE);
+        for (int k = 0; k < words; k++) {
+            long alive = dead == null ? ~0L : ~dead[k];
+            black[k] = b[k] & alive;
+            white[k] = w[k] & alive;
+            empty[k] = onBoard[k] & ~(black[k] | white[k]);
+            blackArea[k] = black[k];
+            whiteArea[k] = white[k];
+        }
+        for (int k = 0; k < words; k++) {
+            while (empty[k] != 0) {
+                fill((k << 6) + Long.numberOfTrailingZeros(empty[k]));
+                geometry.dilate(region, grown);
+                boolean touchBlack = false;
+                boolean touchWhite = false;
+                for (int v = 0; v < words; v++) {
+                    touchBlack |= (grown[v] & black[v]) != 0;
+                    touchWhite |= (grown[v] & white[v]) != 0;
+                }
+                if (touchBlack != touchWhite) {
+                    long[] area = touchBlack ? blackArea : whiteArea;
+                    for (int v = 0; v < words; v++) {
+                        area[v] |= region[v];
+                    }
+                }
+            }
+        }
+        blackScore = 0;
+        whiteScore = 0;
+        for (int k = 0; k < words; k++) {
+            blackScore += Long.bitCount(blackArea[k]);
+            whiteScore += Long.bitCount(whiteArea[k]);
+        }
+        return whiteScore - blackScore;
+    }
+
+    /**
+     * 计分并加上贴目
+     * @return 白方领先的目数，负数表示黑方领先
+     */
+    public double score(BitBoard board, long[] dead, double komi) {
+        return score(board, dead) + komi;
+    }
+
+    //从seed开始填充所在的空区域，填完的点从empty中去掉
+    private void fill(int seed) {
+        BitBoard.clear(region);
+        BitBoard.setBit(region, seed);
+        while (true) {
+            geometry.dilate(region, grown);
+            boolean changed = false;
+            for (int k = 0; k < words; k++) {
+                long next = grown[k] & empty[k];
+                if (next != region[k]) {
+                    region[k] = next;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+        for (int k = 0; k < words; k++) {
+            empty[k] &= ~region[k];
+        }
+    }
+
+    public int getBlackScore() {
+        return blackScore;
+    }
+
+    public int getWhiteScore() {
+        return whiteScore;
+    }
+
+    /**
+     * 最近一次计分某点的归属 -1黑 1白 0无
+     */
+    public int getOwner(int point) {
+        if (BitBoard.testBit(blackArea, point)) {
+            return BitBoard.BLACK;
+        }
+        return BitBoard.testBit(whiteArea, point) ? BitBoard.WHITE : BitBoard.EMPTY;
+    }
+
+    /**
+     * 最近一次计分一方的棋子和地，不要修改
+     */
+    public long[] getArea(int color) {
+        return color == BitBoard.BLACK ? blackArea : whiteArea;
+    }
+}
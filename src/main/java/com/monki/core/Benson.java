@@ -0,0 +1,295 @@
+package com.monki.core;
+
+import java.util.Arrays;
+
+/**
+ * Benson算法：找出无条件活（pass-alive）的棋串和地
+ * 对一方来说，不含己方棋子的连通区域如果所有空点都是某个棋串的气，就是这个棋串的要害区域。
+ * 反复去掉要害区域少于两个的棋串，以及与被去掉的棋串相邻的区域，剩下的棋串即使己方一直虚手也不会被提。
+ * 剩下的区域中每个空点都与己方棋子相邻的，算作无条件的地，其中的对方棋子都是死子。
+ * 无条件活的棋串在对方落子后仍然无条件活，只要己方没有往自己的地里落子，
+ * 下一次计算就把上次的结果直接当作活棋，只对其余的棋串迭代。
+ * 缓冲区在构造时分配好，计算不分配对象。一个实例只能由一个线程使用
+ */
+public final class Benson {
+    private static final int MAX_VITAL = 4;//一个区域最多是几个棋串的要害（空点最多与4个棋串相邻）
+
+    private final BoardGeometry geometry;
+    private final int words;
+
+    // 计算结果，下标0为黑方，1为白方
+    private final long[][] alive = new long[2][];//无条件活的棋子
+    private final long[][] territory = new long[2][];//无条件的地，含其中对方的死子
+    private long lastHash;
+    private boolean computed;
+
+    // 计算用的缓冲区
+    private final int[] blockOf;//棋串根节点对应的棋串编号
+    private final int[] blockStamp;
+    private final boolean[] blockFixed;//上次已确认活的棋串，不参与去除
+    private final boolean[] blockAlive;
+    private final int[] vitalCount;
+    private final int[] regionOf;//点所在的区域编号
+    private final int[] regionStamp;
+    private final boolean[] regionHealthy;//区域周围的棋串都还没被去掉
+    private final boolean[] regionSmall;//区域的空点都与己方棋子相邻
+    private final int[] vital;//区域的要害棋串，每个区域MAX_VITAL项
+    private final int[] vitalSize;
+    private final int[] borderStart;//区域相邻棋串在border中的范围
+    private final int[] border;
+    private final int[] borderSeen;//棋串最近一次被记入相邻列表的区域
+    private final int[] stack;
+    private final int[] adjacent = new int[4];
+    private int stamp;
+
+    public Benson(BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.words = geometry.words;
+        int length = geometry.length;
+        for (int k = 0; k < 2; k++) {
+            alive[k] = new long[words];
+            territory[k] = new long[words];
+        }
+        blockOf = new int[length];
+        blockStamp = new int[length];
+        blockFixed = new boolean[geometry.pointCount];
+        blockAlive = new boolean[geometry.pointCount];
+        vitalCount = new int[geometry.pointCount];
+        regionOf = new int[length];
+        regionStamp = new int[length];
+        regionHealthy = new boolean[geometry.pointCount];
+        regionSmall = new boolean[geometry.pointCount];
+        vital = new int[geometry.pointCount * MAX_VITAL];
+        vitalSize = new int[geometry.pointCount];
+        borderStart = new int[geometry.pointCount + 1];
+        border = new int[geometry.pointCount * 4];
+        borderSeen = new int[geometry.pointCount];
+        stack = new int[length];
+    }
+
+    /**
+     * 计算双方无条件活的棋串和地，局面没有变化时直接沿用上次的结果
+     */
+    public void compute(BitBoard board) {
+        if (computed && board.getHash() == lastHash) {
+            return;
+        }
+        compute(board, BitBoard.BLACK);
+        compute(board, BitBoard.WHITE);
+        lastHash = board.getHash();
+        computed = true;
+    }
+
+    private void compute(BitBoard board, int color) {
+        long[] own = board.plane(color);
+        long[] known = alive[index(color)];
+        long[] land = territory[index(color)];
+        // 上次的活棋都还在、己方也没有填自己的地时沿用
+        boolean reuse = computed;
+        for (int w = 0; w < words && reuse; w++) {
+            reuse = (known[w] & ~own[w]) == 0 && (land[w] & own[w]) == 0;
+        }
+
+        // 给己方棋串编号
+        int blocks = 0;
+        stamp++;
+        for (int p : geometry.points()) {
+            if (board.get(p) != color) {
+                continue;
+            }
+            int root = board.find(p);
+            if (blockStamp[root] != stamp) {
+                blockStamp[root] = stamp;
+                blockOf[root] = blocks;
+                blockFixed[blocks] = false;
+                blockAlive[blocks] = true;
+                borderSeen[blocks] = -1;
+                blocks++;
+            }
+            if (reuse && BitBoard.testBit(known, p)) {
+                blockFixed[blockOf[root]] = true;
+            }
+        }
+
+        // 找出不含己方棋子的区域，记下相邻的棋串和要害棋串
+        int regions = 0;
+        int borders = 0;
+        for (int p : geometry.points()) {
+            if (board.get(p) == color || regionStamp[p] == stamp) {
+                continue;
+            }
+            int r = regions++;
+            borderStart[r] = borders;
+            vitalSize[r] = -1;//还没遇到空点
+            regionSmall[r] = true;
+            int top = 0;
+            stack[top++] = p;
+            regionStamp[p] = stamp;
+            while (top > 0) {
+                int q = stack[--top];
+                regionOf[q] = r;
+                int count = 0;
+                for (int dir = 0; dir < 4; dir++) {
+                    int n = geometry.neighbor(q, dir);
+                    int stone = board.get(n);
+                    if (stone == color) {
+                        int b = blockOf[board.find(n)];
+                        adjacent[count++] = b;
+                        if (borderSeen[b] != r) {
+                            borderSeen[b] = r;
+                            border[borders++] = b;
+                        }
+                    } else if (stone != BitBoard.OFF_BOARD && regionStamp[n] != stamp) {
+                        regionStamp[n] = stamp;
+                        stack[top++] = n;
+                    }
+                }
+                if (board.get(q) == BitBoard.EMPTY) {
+                    if (count == 0) {
+                        regionSmall[r] = false;
+                    }
+                    intersectVital(r, count);
+                }
+            }
+            if (vitalSize[r] < 0) {
+                vitalSize[r] = 0;
+            }
+            regionHealthy[r] = borders > borderStart[r];//不与己方棋子相邻的区域不算
+        }
+        borderStart[regions] = borders;
+
+        // 反复去掉要害区域不足两个的棋串和与之相邻的区域
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Arrays.fill(vitalCount, 0, blocks, 0);
+            for (int r = 0; r < regions; r++) {
+                if (regionHealthy[r]) {
+                    for (int k = 0; k < vitalSize[r]; k++) {
+                        vitalCount[vital[r * MAX_VITAL + k]]++;
+                    }
+                }
+            }
+            for (int b = 0; b < blocks; b++) {
+                if (blockAlive[b] && !blockFixed[b] && vitalCount[b] < 2) {
+                    blockAlive[b] = false;
+                    changed = true;
+                }
+            }
+            for (int r = 0; r < regions; r++) {
+                if (!regionHealthy[r]) {
+                    continue;
+                }
+                for (int k = borderStart[r]; k < borderStart[r + 1]; k++) {
+                    if (!blockAlive[border[k]]) {
+                        regionHealthy[r] = false;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        BitBoard.clear(known);
+        BitBoard.clear(land);
+        for (int p : geometry.points()) {
+            int stone = board.get(p);
+            if (stone == color) {
+                if (blockAlive[blockOf[board.find(p)]]) {
+                    BitBoard.setBit(known, p);
+                }
+            } else if (regionHealthy[regionOf[p]] && regionSmall[regionOf[p]]) {
+                BitBoard.setBit(land, p);
+            }
+        }
+    }
+
+    //区域的要害棋串与本空点相邻的棋串取交集
+    private void intersectVital(int r, int count) {
+        int base = r * MAX_VITAL;
+        if (vitalSize[r] < 0) {
+            int size = 0;
+            for (int k = 0; k < count; k++) {
+                if (indexOf(vital, base, size, adjacent[k]) < 0) {
+                    vital[base + size++] = adjacent[k];
+                }
+            }
+            vitalSize[r] = size;
+            return;
+        }
+        int size = 0;
+        for (int k = 0; k < vitalSize[r]; k++) {
+            int b = vital[base + k];
+            if (indexOf(adjacent, 0, count, b) >= 0) {
+                vital[base + size++] = b;
+            }
+        }
+        vitalSize[r] = size;
+    }
+
+    private static int indexOf(int[] array, int from, int count, int value) {
+        for (int k = from; k < from + count; k++) {
+            if (array[k] == value) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private static int index(int color) {
+        return color == BitBoard.BLACK ? 0 : 1;
+    }
+
+    /**
+     * 某点的棋子是否无条件活
+     */
+    public boolean isPassAlive(int point) {
+        return BitBoard.testBit(alive[0], point) || BitBoard.testBit(alive[1], point);
+    }
+
+    /**
+     * 某点是哪一方无条件的地 -1黑 1白 0都不是
+     */
+    public int getOwner(int point) {
+        if (BitBoard.testBit(territory[0], point)) {
+            return BitBoard.BLACK;
+        }
+        return BitBoard.testBit(territory[1], point) ? BitBoard.WHITE : BitBoard.EMPTY;
+    }
+
+    /**
+     * 某点的棋子是否在对方无条件的地里，这样的棋子一定是死子
+     */
+    public boolean isDead(BitBoard board, int point) {
+        int stone = board.get(point);
+        return (stone == BitBoard.BLACK || stone == BitBoard.WHITE) && getOwner(point) == -stone;
+    }
+
+    /**
+     * 一方无条件活的棋子，不要修改
+     */
+    public long[] getAlive(int color) {
+        return alive[index(color)];
+    }
+
+    /**
+     * 一方无条件的地，不要修改
+     */
+    public long[] getTerritory(int color) {
+        return territory[index(color)];
+    }
+
+    /**
+     * 整个棋盘是否都已定型：每个点都是无条件活的棋子或无条件的地
+     */
+    public boolean isSettled() {
+        long[] onBoard = geometry.onBoard();
+        for (int w = 0; w < words; w++) {
+            long settled = alive[0][w] | alive[1][w] | territory[0][w] | territory[1][w];
+            if ((onBoard[w] & ~settled) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
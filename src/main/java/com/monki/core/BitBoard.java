@@ -0,0 +1,973 @@
+package com.monki.core;
+
+import com.monki.util.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 位棋盘
+ * 黑白双方各用一个long数组平面记录交叉点的占用情况，点的编码和相邻点表由BoardGeometry提供，
+ * 支持9路、13路、19路等任意路数，另有一个按点下标的cells数组，边框点标记为OFF_BOARD，
+ * 查看相邻点时不需要边界判断。每个点还增量维护周围3x3的16位图案编码，供Patterns查表。
+ * 棋串用并查集增量维护，每个棋串的气用位集合保存并缓存气数，
+ * 落子时只更新与落子点相邻的棋串，过程不分配对象。
+ * 每手棋的变化量记入悔棋日志，悔棋只还原变化的点和相关棋串，不复制棋盘
+ */
+public class BitBoard {
+    // 棋盘状态常量，与GameState中的约定一致 -1黑 1白 0空
+    public static final int BLACK = -1;
+    public static final int WHITE = 1;
+    public static final int EMPTY = 0;
+    public static final int OFF_BOARD = 2;//边框点
+    public static final int PASS = -1;//虚手，悔棋日志中的落子点
+
+    private final BoardGeometry geometry;
+    private final int size;//围棋路数
+    private final int length;//点下标总数（含边框）
+    private final int words;//每个平面需要的long数量
+    private final int[] adjacent;//相邻点表，与geometry共用
+    private final long[] onBoard;//棋盘内点的掩码，与geometry共用
+
+    private final int[] around;//周围8个点的表，与geometry共用
+    private final byte[] cells;//每个点的状态，与两个位平面保持一致
+    private final int[] patterns;//每个点周围8个点的状态，每点2位（0空 1白 2边框 3黑），顺序同around
+    private final long[] black;
+    private final long[] white;
+
+    // 棋串并查集：parent直接指向根节点，next把同一棋串的棋子连成环，便于合并、提子时遍历
+    private final int[] parent;
+    private final int[] next;
+    // 以下数组只在棋串的根节点上有效
+    private final int[] stoneCount;//棋串棋子数
+    private final int[] libCount;//棋串气数
+    private final long[] libs;//棋串气的位集合，根节点r占用[r*words, (r+1)*words)
+    private final long[] stringHash;//棋串所有棋子Zobrist随机数的异或
+
+    private long hash;//当前局面的Zobrist哈希
+    private int koPoint = -1;//劫争时禁止立即回提的点，没有则为-1
+    private int blackPrisoners;//黑方提掉的白子数
+    private int whitePrisoners;//白方提掉的黑子数
+
+    // 悔棋日志，第n手棋的变化量保存在各数组的第n项
+    private int journalSize;
+    private int[] journalPoint = new int[64];//落子点，虚手为PASS
+    private int[] journalColor = new int[64];//落子方
+    private int[] journalMerged = new int[64];//与落子合并的己方棋串所在方向，每个方向一位
+    private int[] journalKo = new int[64];//落子前的劫
+    private int[] journalCapStart = new int[64];//被提的点在capturedLog中的起始位置
+    private long[] journalHash = new long[64];//落子前的局面哈希
+    private int[] capturedLog = new int[256];//所有被提的点，按手数顺序排列
+    private int capturedLogSize;
+
+    // 扫描用的缓冲区，重复使用避免每次落子分配
+    private final long[] grown;
+    private final long[] empty;
+    private final long[] captured;//最近一次落子提掉的子
+    private final long[] rebuilt;//悔棋时已重建的棋串
+    private final long[] string;
+    private final int[] stack;//重建棋串时遍历用的栈
+
+    public BitBoard() {
+        this(Config.PATH);
+    }
+
+    public BitBoard(int size) {
+        this(BoardGeometry.of(size));
+    }
+
+    public BitBoard(BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.size = geometry.size;
+        this.length = geometry.length;
+        this.words = geometry.words;
+        this.adjacent = geometry.neighborTable();
+        this.onBoard = geometry.onBoard();
+        this.around = geometry.aroundTable();
+        cells = new byte[length];
+        patterns = new int[length];
+        black = new long[words];
+        white = new long[words];
+        parent = new int[length];
+        next = new int[length];
+        stoneCount = new int[length];
+        libCount = new int[length];
+        libs = new long[length * words];
+        stringHash = new long[length];
+        grown = new long[words];
+        empty = new long[words];
+        captured = new long[words];
+        rebuilt = new long[words];
+        string = new long[words];
+        stack = new int[length];
+        resetCells();
+    }
+
+    private void resetCells() {
+        for (int p = 0; p < length; p++) {
+            cells[p] = (byte) (geometry.isOnBoard(p) ? EMPTY : OFF_BOARD);
+        }
+        for (int p : geometry.points()) {
+            int code = 0;
+            for (int k = 0; k < 8; k++) {
+                code |= (cells[around[(p << 3) + k]] & 3) << (k << 1);
+            }
+            patterns[p] = code;
+        }
+    }
+
+    //改变某点状态，同时用异或更新周围8个点的图案中对应的2位（本点在对方图案中的方向与对方相对本点的方向相反）
+    //点的状态取低2位就是图案编码：空0 白1 边框2 黑3
+    private void setCell(int point, int stone) {
+        int delta = (cells[point] ^ stone) & 3;
+        cells[point] = (byte) stone;
+        int s = geometry.stride;
+        patterns[point - s] ^= delta << 2;
+        patterns[point + s] ^= delta;
+        patterns[point - 1] ^= delta << 6;
+        patterns[point + 1] ^= delta << 4;
+        patterns[point - s - 1] ^= delta << 14;
+        patterns[point - s + 1] ^= delta << 12;
+        patterns[point + s - 1] ^= delta << 10;
+        patterns[point + s + 1] ^= delta << 8;
+    }
+
+    /**
+     * 某点周围3x3的图案编码，每个相邻点2位，见Patterns
+     */
+    public int pattern(int point) {
+        return patterns[point];
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 根据行列坐标（从1开始，i为行j为列）计算点的下标
+     */
+    public int point(int i, int j) {
+        return geometry.point(i, j);
+    }
+
+    public int rowOf(int point) {
+        return geometry.rowOf(point);
+    }
+
+    public int colOf(int point) {
+        return geometry.colOf(point);
+    }
+
+    /**
+     * 获取相邻点 dir: 0上 1下 2左 3右，可能是边框点
+     */
+    public int neighbor(int point, int dir) {
+        return adjacent[(point << 2) + dir];
+    }
+
+    public boolean isOnBoard(int i, int j) {
+        return geometry.isOnBoard(i, j);
+    }
+
+    /**
+     * 获取某点状态 -1黑 1白 0空，边框点为OFF_BOARD
+     */
+    public int get(int point) {
+        return cells[point];
+    }
+
+    public int get(int i, int j) {
+        return get(point(i, j));
+    }
+
+    public long[] plane(int color) {
+        return color == BLACK ? black : white;
+    }
+
+    /**
+     * 在指定点落子并提掉没有气的对方棋串
+     * 调用前应已通过isSuicide等检查确认落子合法
+     * @param point 落子点
+     * @param color 落子方 -1黑 1白
+     * @return 提掉的棋子数
+     */
+    public int play(int point, int color) {
+        ensureJournalCapacity();
+        int entry = journalSize++;
+        journalPoint[entry] = point;
+        journalColor[entry] = color;
+        journalKo[entry] = koPoint;
+        journalHash[entry] = hash;
+        journalCapStart[entry] = capturedLogSize;
+        journalMerged[entry] = 0;
+
+        setBit(plane(color), point);
+        setCell(point, color);
+        clear(captured);
+        long key = Zobrist.key(color, point);
+        hash ^= key;
+
+        // 新棋子单独成串，先记下它的气
+        parent[point] = point;
+        next[point] = point;
+        stoneCount[point] = 1;
+        stringHash[point] = key;
+        libCount[point] = 0;
+        int base = point * words;
+        for (int w = 0; w < words; w++) {
+            libs[base + w] = 0L;
+        }
+        for (int dir = 0; dir < 4; dir++) {
+            int n = adjacent[(point << 2) + dir];
+            if (cells[n] == EMPTY) {
+                addLiberty(point, n);
+            }
+        }
+
+        // 相邻棋串失去这口气，己方棋串与新棋子合并
+        for (int dir = 0; dir < 4; dir++) {
+            int n = adjacent[(point << 2) + dir];
+            int stone = cells[n];
+            if (stone == EMPTY || stone == OFF_BOARD) {
+                continue;
+            }
+            int root = find(n);
+            removeLiberty(root, point);
+            if (stone == color) {
+                journalMerged[entry] |= 1 << dir;
+                union(find(point), root);
+            }
+        }
+
+        // 气为0的对方棋串被提掉
+        int removed = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            int n = adjacent[(point << 2) + dir];
+            if (cells[n] == -color) {
+                int root = find(n);
+                if (libCount[root] == 0) {
+                    removed += removeString(root, -color);
+                }
+            }
+        }
+
+        if (color == BLACK) {
+            blackPrisoners += removed;
+        } else {
+            whitePrisoners += removed;
+        }
+
+        // 提掉一子且落子是只有一口气的单子时形成劫
+        int own = find(point);
+        koPoint = removed == 1 && stoneCount[own] == 1 && libCount[own] == 1
+                ? capturedLog[capturedLogSize - 1] : -1;
+        return removed;
+    }
+
+    /**
+     * 虚手：棋盘不变，劫解除，记入悔棋日志
+     * 虚手之后提劫的一方可以粘劫，对方也可以提回
+     * @param color 虚手的一方
+     */
+    public void pass(int color) {
+        ensureJournalCapacity();
+        int entry = journalSize++;
+        journalPoint[entry] = PASS;
+        journalColor[entry] = color;
+        journalKo[entry] = koPoint;
+        journalHash[entry] = hash;
+        journalCapStart[entry] = capturedLogSize;
+        journalMerged[entry] = 0;
+        clear(captured);
+        koPoint = -1;
+    }
+
+    /**
+     * 悔棋：撤销最近一手棋
+     * 按日志移除落子、放回被提的子，并重建受影响的棋串，代价只与变化的棋子数有关
+     * @return 被撤销的落子点，撤销的是虚手时返回PASS，没有可撤销的棋时也返回-1（与PASS相同，需要区分时先看getJournalSize）
+     */
+    public int undo() {
+        if (journalSize == 0) {
+            return -1;
+        }
+        int entry = --journalSize;
+        int point = journalPoint[entry];
+        int color = journalColor[entry];
+        int capStart = journalCapStart[entry];
+        if (point == PASS) {
+            koPoint = journalKo[entry];
+            clear(captured);
+            return PASS;
+        }
+
+        clearBit(plane(color), point);
+        setCell(point, EMPTY);
+        long[] opponent = plane(-color);
+        for (int k = capStart; k < capturedLogSize; k++) {
+            setBit(opponent, capturedLog[k]);
+            setCell(capturedLog[k], -color);
+        }
+
+        // 重建被拆开的己方棋串和放回的对方棋串
+        clear(rebuilt);
+        int merged = journalMerged[entry];
+        for (int dir = 0; dir < 4; dir++) {
+            if ((merged & (1 << dir)) != 0) {
+                rebuildString(adjacent[(point << 2) + dir]);
+            }
+        }
+        for (int k = capStart; k < capturedLogSize; k++) {
+            rebuildString(capturedLog[k]);
+        }
+        // 其余相邻棋串只有气变化，不必重建：落子点还给对方棋串，被提的点从己方棋串中去掉
+        for (int dir = 0; dir < 4; dir++) {
+            int n = adjacent[(point << 2) + dir];
+            if (cells[n] == -color) {
+                addLiberty(find(n), point);
+            }
+        }
+        for (int k = capStart; k < capturedLogSize; k++) {
+            int p = capturedLog[k];
+            for (int dir = 0; dir < 4; dir++) {
+                int n = adjacent[(p << 2) + dir];
+                if (cells[n] == color && !testBit(rebuilt, n)) {
+                    removeLiberty(find(n), p);
+                }
+            }
+        }
+
+        if (color == BLACK) {
+            blackPrisoners -= capturedLogSize - capStart;
+        } else {
+            whitePrisoners -= capturedLogSize - capStart;
+        }
+        capturedLogSize = capStart;
+        koPoint = journalKo[entry];
+        hash = journalHash[entry];
+        clear(captured);
+        return point;
+    }
+
+    //从某点沿相邻点遍历整个棋串，重建并查集、棋子环、气和哈希，代价与棋串大小成正比
+    private void rebuildString(int seed) {
+        if (testBit(rebuilt, seed)) {
+            return;
+        }
+        int color = cells[seed];
+        int base = seed * words;
+        for (int w = 0; w < words; w++) {
+            libs[base + w] = 0L;
+        }
+        int liberties = 0;
+        int count = 0;
+        long keys = 0L;
+        int last = seed;
+        int top = 0;
+        stack[top++] = seed;
+        setBit(rebuilt, seed);
+        while (top > 0) {
+            int p = stack[--top];
+            parent[p] = seed;
+            keys ^= Zobrist.key(color, p);
+            count++;
+            if (p != seed) {
+                next[last] = p;
+                last = p;
+            }
+            for (int dir = 0; dir < 4; dir++) {
+                int n = adjacent[(p << 2) + dir];
+                int stone = cells[n];
+                if (stone == EMPTY) {
+                    int index = base + (n >>> 6);
+                    long bit = 1L << n;
+                    if ((libs[index] & bit) == 0) {
+                        libs[index] |= bit;
+                        liberties++;
+                    }
+                } else if (stone == color && !testBit(rebuilt, n)) {
+                    setBit(rebuilt, n);
+                    stack[top++] = n;
+                }
+            }
+        }
+        next[last] = seed;
+        stoneCount[seed] = count;
+        libCount[seed] = liberties;
+        stringHash[seed] = keys;
+    }
+
+    /**
+     * 已记录的手数，即可以连续悔棋的步数
+     */
+    public int getJournalSize() {
+        return journalSize;
+    }
+
+    /**
+     * 第n手（从0开始）棋合并的己方棋串所在方向，每个方向一位（0上 1下 2左 3右）
+     */
+    public int getMergedDirections(int n) {
+        return journalMerged[n];
+    }
+
+    /**
+     * 第n手（从0开始）提掉的点
+     */
+    public int[] getCapturedPoints(int n) {
+        int end = n + 1 < journalSize ? journalCapStart[n + 1] : capturedLogSize;
+        return Arrays.copyOfRange(capturedLog, journalCapStart[n], end);
+    }
+
+    /**
+     * 第n手（从0开始）提掉的子数
+     */
+    public int getCapturedCount(int n) {
+        int end = n + 1 < journalSize ? journalCapStart[n + 1] : capturedLogSize;
+        return end - journalCapStart[n];
+    }
+
+    /**
+     * 一方提掉的对方棋子总数，随落子和悔棋增减
+     * @param color 提子的一方 -1黑 1白
+     */
+    public int getPrisoners(int color) {
+        return color == BLACK ? blackPrisoners : whitePrisoners;
+    }
+
+    /**
+     * 当前的劫，没有则为-1
+     */
+    public int getKoPoint() {
+        return koPoint;
+    }
+
+    private void ensureJournalCapacity() {
+        if (journalSize == journalPoint.length) {
+            int capacity = journalSize * 2;
+            journalPoint = Arrays.copyOf(journalPoint, capacity);
+            journalColor = Arrays.copyOf(journalColor, capacity);
+            journalMerged = Arrays.copyOf(journalMerged, capacity);
+            journalKo = Arrays.copyOf(journalKo, capacity);
+            journalCapStart = Arrays.copyOf(journalCapStart, capacity);
+            journalHash = Arrays.copyOf(journalHash, capacity);
+        }
+        if (capturedLogSize + length > capturedLog.length) {
+            capturedLog = Arrays.copyOf(capturedLog, capturedLog.length * 2 + length);
+        }
+    }
+
+    /**
+     * 查找棋串的根节点，合并时已把棋子直接指向根节点，只需一次数组访问
+     */
+    public int find(int point) {
+        return parent[point];
+    }
+
+    //按棋子数合并两个棋串，较小棋串的棋子沿环改为指向新根，合并气的位集合并重新计数
+    private void union(int a, int b) {
+        if (a == b) {
+            return;
+        }
+        if (stoneCount[a] < stoneCount[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int p = b;
+        do {
+            parent[p] = a;
+            p = next[p];
+        } while (p != b);
+        stoneCount[a] += stoneCount[b];
+        stringHash[a] ^= stringHash[b];
+        int t = next[a];
+        next[a] = next[b];
+        next[b] = t;
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            libs[a * words + w] |= libs[b * words + w];
+            count += Long.bitCount(libs[a * words + w]);
+        }
+        libCount[a] = count;
+    }
+
+    private void addLiberty(int root, int point) {
+        int index = root * words + (point >>> 6);
+        long bit = 1L << point;
+        if ((libs[index] & bit) == 0) {
+            libs[index] |= bit;
+            libCount[root]++;
+        }
+    }
+
+    private void removeLiberty(int root, int point) {
+        int index = root * words + (point >>> 6);
+        long bit = 1L << point;
+        if ((libs[index] & bit) != 0) {
+            libs[index] &= ~bit;
+            libCount[root]--;
+        }
+    }
+
+    //提掉整个棋串，被提的点成为相邻棋串的气
+    private int removeString(int root, int color) {
+        long[] stones = plane(color);
+        int count = 0;
+        int p = root;
+        do {
+            clearBit(stones, p);
+            setCell(p, EMPTY);
+            setBit(captured, p);
+            capturedLog[capturedLogSize++] = p;
+            count++;
+            p = next[p];
+        } while (p != root);
+        hash ^= stringHash[root];
+        do {
+            for (int dir = 0; dir < 4; dir++) {
+                int n = adjacent[(p << 2) + dir];
+                if (cells[n] == BLACK || cells[n] == WHITE) {
+                    addLiberty(find(n), p);
+                }
+            }
+            p = next[p];
+        } while (p != root);
+        return count;
+    }
+
+    /**
+     * 判断在指定点落子是否为自杀：落子后不能提子且己方棋串没有气
+     * 只需查看相邻棋串缓存的气数，不修改棋盘
+     */
+    public boolean isSuicide(int point, int color) {
+        for (int dir = 0; dir < 4; dir++) {
+            int n = adjacent[(point << 2) + dir];
+            int stone = cells[n];
+            if (stone == OFF_BOARD) {
+                continue;
+            }
+            if (stone == EMPTY) {
+                return false;
+            }
+            int liberties = libCount[find(n)];
+            if (stone == color && liberties > 1) {
+                return false;//与还有其他气的己方棋串相连
+            }
+            if (stone == -color && liberties == 1) {
+                return false;//能提子，不算自杀
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 判断空点是否是某方的眼：上下左右都是己方棋子或边框，
+     * 对角上的对方棋子在中腹不超过一个、在边上和角上没有
+     */
+    public boolean isEye(int point, int color) {
+        boolean edge = false;
+        for (int dir = 0; dir < 4; dir++) {
+            int stone = cells[adjacent[(point << 2) + dir]];
+            if (stone == OFF_BOARD) {
+                edge = true;
+            } else if (stone != color) {
+                return false;
+            }
+        }
+        int enemies = 0;
+        for (int k = 0; k < 4; k++) {
+            if (cells[geometry.diagonal(point, k)] == -color) {
+                enemies++;
+            }
+        }
+        return edge ? enemies == 0 : enemies < 2;
+    }
+
+    /**
+     * 计算在指定点落子（含提子）后的局面哈希，不修改棋盘
+     * 被提棋串的哈希已经缓存在根节点上，因此只需异或几个值
+     */
+    public long hashAfter(int point, int color) {
+        long result = hash ^ Zobrist.key(color, point);
+        int r0 = -1, r1 = -1, r2 = -1;
+        for (int dir = 0; dir < 4; dir++) {
+            int n = adjacent[(point << 2) + dir];
+            if (cells[n] != -color) {
+                continue;
+            }
+            int root = find(n);
+            if (libCount[root] == 1 && root != r0 && root != r1 && root != r2) {
+                result ^= stringHash[root];
+            }
+            if (r0 < 0) {
+                r0 = root;
+            } else if (r1 < 0) {
+                r1 = root;
+            } else {
+                r2 = root;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算在指定点落子后的劫，不修改棋盘，与play的判断一致：
+     * 恰好提掉一子，且落子没有己方邻子、也没有空邻点（提子后只剩被提的那口气）时，被提的点成为劫
+     * @return 落子后的劫，没有则为-1
+     */
+    public int koAfter(int point, int color) {
+        int removed = 0;
+        int capturedPoint = -1;
+        int r0 = -1, r1 = -1, r2 = -1;
+        for (int dir = 0; dir < 4; dir++) {
+            int n = adjacent[(point << 2) + dir];
+            int stone = cells[n];
+            if (stone == EMPTY || stone == color) {
+                return -1;
+            }
+            if (stone != -color) {
+                continue;
+            }
+            int root = find(n);
+            if (libCount[root] == 1 && root != r0 && root != r1 && root != r2) {
+                removed += stoneCount[root];
+                capturedPoint = n;
+            }
+            if (r0 < 0) {
+                r0 = root;
+            } else if (r1 < 0) {
+                r1 = root;
+            } else {
+                r2 = root;
+            }
+        }
+        return removed == 1 ? capturedPoint : -1;
+    }
+
+    /**
+     * 一次扫描生成某方所有合法落子点的掩码
+     * 有空邻点的空点先按位批量判定为非自杀，其余的空点查看相邻棋串缓存的气数，
+     * 再排除劫，history不为空时用哈希排除全局同形
+     * @param color 落子方
+     * @param history 对局历史，为null时不检查全局同形
+     * @param out 输出掩码
+     * @return 合法落子点的数量
+     */
+    public int legalMoves(int color, PositionHistory history, long[] out) {
+        getEmpty();
+        neighbors(empty, grown);
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            long legal = empty[w] & grown[w];//有空邻点，一定不是自杀
+            long rest = empty[w] & ~grown[w];
+            while (rest != 0) {
+                int p = (w << 6) + Long.numberOfTrailingZeros(rest);
+                rest &= rest - 1;
+                if (!isSuicide(p, color)) {
+                    legal |= 1L << p;
+                }
+            }
+            if (koPoint >= 0 && (koPoint >>> 6) == w) {
+                legal &= ~(1L << koPoint);
+            }
+            if (history != null) {
+                long bits = legal;
+                while (bits != 0) {
+                    int p = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (history.contains(hashAfter(p, color))) {
+                        legal &= ~(1L << p);
+                    }
+                }
+            }
+            out[w] = legal;
+            count += Long.bitCount(legal);
+        }
+        return count;
+    }
+
+    /**
+     * 生成某方所有合法落子点的列表
+     * @param out 输出数组，长度至少为棋盘内的点数
+     * @return 合法落子点的数量
+     */
+    public int legalMoves(int color, PositionHistory history, int[] out) {
+        legalMoves(color, history, string);
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = string[w];
+            while (bits != 0) {
+                out[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 判断单个点是否可以落子：空点、非自杀、不是劫，history不为空时检查全局同形
+     */
+    public boolean isLegal(int point, int color, PositionHistory history) {
+        return get(point) == EMPTY && point != koPoint && !isSuicide(point, color)
+                && (history == null || !history.contains(hashAfter(point, color)));
+    }
+
+    /**
+     * 当前局面的Zobrist哈希
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * 某点所在棋串的气数
+     */
+    public int getLiberty(int point) {
+        return libCount[find(point)];
+    }
+
+    /**
+     * 某点所在棋串是否被打吃（只剩一口气）
+     */
+    public boolean isInAtari(int point) {
+        return libCount[find(point)] == 1;
+    }
+
+    /**
+     * 某点所在棋串的棋子数
+     */
+    public int getStringSize(int point) {
+        return stoneCount[find(point)];
+    }
+
+    /**
+     * 某点所在棋串的气写入out，不分配对象
+     * @return 气数，out放不下时多出的气不写入
+     */
+    public int getLiberties(int point, int[] out) {
+        int root = find(point);
+        int base = root * words;
+        int count = 0;
+        for (int w = 0; w < words && count < out.length; w++) {
+            long bits = libs[base + w];
+            while (bits != 0 && count < out.length) {
+                out[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return libCount[root];
+    }
+
+    /**
+     * 同一棋串的下一个棋子，棋串的棋子连成环，从任一棋子出发最终回到自身
+     */
+    public int nextStone(int point) {
+        return next[point];
+    }
+
+    /**
+     * 某点所在棋串
+     */
+    public StoneString getString(int point) {
+        int root = find(point);
+        long[] mask = new long[words];
+        int p = root;
+        do {
+            setBit(mask, p);
+            p = next[p];
+        } while (p != root);
+        long[] liberties = new long[words];
+        System.arraycopy(libs, root * words, liberties, 0, words);
+        return new StoneString(get(root), mask, liberties, libCount[root]);
+    }
+
+    /**
+     * 从某点出发，在给定平面内按位并行地扩展出整个棋串
+     * @param point 起点
+     * @param stones 棋子所在平面
+     * @param out 输出棋串掩码
+     */
+    public void floodFill(int point, long[] stones, long[] out) {
+        clear(out);
+        setBit(out, point);
+        while (true) {
+            dilate(out, grown);
+            boolean changed = false;
+            for (int w = 0; w < words; w++) {
+                long next = grown[w] & stones[w];
+                if (next != out[w]) {
+                    out[w] = next;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 当前棋盘上某一方的所有棋串
+     */
+    public List<StoneString> getStrings(int color) {
+        List<StoneString> strings = new ArrayList<>();
+        long[] own = plane(color);
+        for (int w = 0; w < words; w++) {
+            long bits = own[w];
+            while (bits != 0) {
+                int p = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (find(p) == p) {
+                    strings.add(getString(p));
+                }
+                bits &= bits - 1;
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * 最近一次落子提掉的棋子掩码
+     */
+    public long[] getCaptured() {
+        return captured;
+    }
+
+    /**
+     * 空点掩码
+     */
+    public long[] getEmpty() {
+        for (int w = 0; w < words; w++) {
+            empty[w] = ~(black[w] | white[w]) & onBoard[w];
+        }
+        return empty;
+    }
+
+    public BitBoard copy() {
+        BitBoard copy = new BitBoard(geometry);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public void copyFrom(BitBoard other) {
+        if (other.geometry != geometry) {
+            throw new IllegalArgumentException("棋盘路数不同: " + other.size + " != " + size);
+        }
+        System.arraycopy(other.cells, 0, cells, 0, length);
+        System.arraycopy(other.patterns, 0, patterns, 0, length);
+        System.arraycopy(other.black, 0, black, 0, words);
+        System.arraycopy(other.white, 0, white, 0, words);
+        System.arraycopy(other.parent, 0, parent, 0, length);
+        System.arraycopy(other.next, 0, next, 0, length);
+        System.arraycopy(other.stoneCount, 0, stoneCount, 0, length);
+        System.arraycopy(other.libCount, 0, libCount, 0, length);
+        System.arraycopy(other.libs, 0, libs, 0, libs.length);
+        System.arraycopy(other.stringHash, 0, stringHash, 0, length);
+        hash = other.hash;
+        koPoint = other.koPoint;
+        blackPrisoners = other.blackPrisoners;
+        whitePrisoners = other.whitePrisoners;
+        journalSize = 0;//副本从当前局面开始记录，不能悔到复制之前
+        capturedLogSize = 0;
+    }
+
+    /**
+     * 复制点的状态和棋串链表，供LightBoard从当前局面开始模拟
+     */
+    void copyCells(byte[] cellsOut, int[] parentOut, int[] nextOut) {
+        System.arraycopy(cells, 0, cellsOut, 0, length);
+        System.arraycopy(parent, 0, parentOut, 0, length);
+        System.arraycopy(next, 0, nextOut, 0, length);
+    }
+
+    /**
+     * 按两个位平面摆出局面，局面中不能有没气的棋串
+     * @param ko 摆好后的劫，没有则为-1
+     * @param blackTaken 黑方已提的子数
+     * @param whiteTaken 白方已提的子数
+     */
+    void load(long[] blackStones, long[] whiteStones, int ko, int blackTaken, int whiteTaken) {
+        clear();
+        for (int p : geometry.points()) {
+            if (testBit(blackStones, p)) {
+                play(p, BLACK);
+            } else if (testBit(whiteStones, p)) {
+                play(p, WHITE);
+            }
+        }
+        koPoint = ko;
+        blackPrisoners = blackTaken;
+        whitePrisoners = whiteTaken;
+        journalSize = 0;
+        capturedLogSize = 0;
+        clear(captured);
+    }
+
+    public void clear() {
+        clear(black);
+        clear(white);
+        clear(captured);
+        resetCells();
+        hash = 0L;
+        koPoint = -1;
+        blackPrisoners = 0;
+        whitePrisoners = 0;
+        journalSize = 0;
+        capturedLogSize = 0;
+    }
+
+    /**
+     * 按位膨胀：每个点向上下左右扩展一格，结果包含原来的点
+     * in和out不能是同一个数组
+     */
+    public void dilate(long[] in, long[] out) {
+        geometry.dilate(in, out);
+    }
+
+    /**
+     * 所有与in中的点相邻的点（不含in本身，除非它们也相邻）
+     * in和out不能是同一个数组
+     */
+    public void neighbors(long[] in, long[] out) {
+        geometry.neighbors(in, out);
+    }
+
+    public static boolean testBit(long[] bits, int point) {
+        return (bits[point >>> 6] & (1L << point)) != 0;
+    }
+
+    public static void setBit(long[] bits, int point) {
+        bits[point >>> 6] |= 1L << point;
+    }
+
+    public static void clearBit(long[] bits, int point) {
+        bits[point >>> 6] &= ~(1L << point);
+    }
+
+    public static void or(long[] target, long[] bits) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= bits[w];
+        }
+    }
+
+    public static void clear(long[] bits) {
+        Arrays.fill(bits, 0L);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= size; i++) {
+            for (int j = 1; j <= size; j++) {
+                sb.append(get(i, j)).append(" ");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package com.monki.core;
+
+/**
+ * 棋盘几何信息
+ * 每种路数只计算一次：点按带边框的一维下标编码，每行多留一列作为左右共用的边框，
+ * 上下各多留一行，所以任何棋盘内点的上下左右、对角相邻点都是有效下标，热点循环不需要边界判断。
+ * 相邻点、对角点和到边距离都预先算成表
+ */
+public final class BoardGeometry {
+    public static final int MIN_SIZE = 2;
+    public static final int MAX_SIZE = 25;//SGF坐标只支持到25路
+
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+
+    private static final BoardGeometry[] CACHE = new BoardGeometry[MAX_SIZE + 1];
+
+    public final int size;//路数
+    public final int stride;//一行占用的下标数（含边框列）
+    public final int length;//下标总数（含边框）
+    public final int words;//位平面需要的long数量
+    public final int pointCount;//棋盘内的点数
+
+    private final int[] neighbors;//相邻点，点p的四个方向在[p*4, p*4+4)
+    private final int[] diagonals;//对角点，点p的四个对角在[p*4, p*4+4)
+    private final int[] around;//周围8个点，点p的在[p*8, p*8+8)，顺序为上下左右、左上右上左下右下
+    private final int[] edgeDistance;//到最近边线的距离，一线为0，边框为-1
+    private final int[] points;//棋盘内所有点的下标
+    private final long[] onBoard;//棋盘内点的掩码
+
+    private BoardGeometry(int size) {
+        this.size = size;
+        this.stride = size + 1;
+        this.length = (size + 2) * stride + 1;//多留一个点，右下角的对角点也是有效下标
+        this.words = (length + 63) >>> 6;
+        this.pointCount = size * size;
+
+        neighbors = new int[length * 4];
+        diagonals = new int[length * 4];
+        around = new int[length * 8];
+        edgeDistance = new int[length];
+        points = new int[pointCount];
+        onBoard = new long[words];
+
+        int n = 0;
+        for (int p = 0; p < length; p++) {
+            int i = p / stride;
+            int j = p % stride;
+            if (!isOnBoard(i, j)) {
+                edgeDistance[p] = -1;
+                continue;
+            }
+            points[n++] = p;
+            BitBoard.setBit(onBoard, p);
+            edgeDistance[p] = Math.min(Math.min(i - 1, size - i), Math.min(j - 1, size - j));
+            neighbors[p * 4 + UP] = p - stride;
+            neighbors[p * 4 + DOWN] = p + stride;
+            neighbors[p * 4 + LEFT] = p - 1;
+            neighbors[p * 4 + RIGHT] = p + 1;
+            diagonals[p * 4] = p - stride - 1;
+            diagonals[p * 4 + 1] = p - stride + 1;
+            diagonals[p * 4 + 2] = p + stride - 1;
+            diagonals[p * 4 + 3] = p + stride + 1;
+            for (int k = 0; k < 4; k++) {
+                around[p * 8 + k] = neighbors[p * 4 + k];
+                around[p * 8 + 4 + k] = diagonals[p * 4 + k];
+            }
+        }
+    }
+
+    /**
+     * 获取某个路数的几何信息，同一路数共用一个实例
+     */
+    public static BoardGeometry of(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("不支持的棋盘路数: " + size);
+        }
+        synchronized (CACHE) {
+            if (CACHE[size] == null) {
+                CACHE[size] = new BoardGeometry(size);
+            }
+            return CACHE[size];
+        }
+    }
+
+    /**
+     * 根据行列坐标（从1开始，i为行j为列）计算点的下标
+     */
+    public int point(int i, int j) {
+        return i * stride + j;
+    }
+
+    public int rowOf(int point) {
+        return point / stride;
+    }
+
+    public int colOf(int point) {
+        return point % stride;
+    }
+
+    public boolean isOnBoard(int i, int j) {
+        return i >= 1 && i <= size && j >= 1 && j <= size;
+    }
+
+    public boolean isOnBoard(int point) {
+        return edgeDistance[point] >= 0;
+    }
+
+    /**
+     * 相邻点 dir: 0上 1下 2左 3右，可能是边框点
+     */
+    public int neighbor(int point, int dir) {
+        return neighbors[point * 4 + dir];
+    }
+
+    /**
+     * 对角点 k: 0左上 1右上 2左下 3右下，可能是边框点
+     */
+    public int diagonal(int point, int k) {
+        return diagonals[point * 4 + k];
+    }
+
+    //相邻点表，点p的四个方向在[p*4, p*4+4)，供热点循环直接索引
+    int[] neighborTable() {
+        return neighbors;
+    }
+
+    //周围8个点的表，供3x3图案的增量更新使用
+    int[] aroundTable() {
+        return around;
+    }
+
+    /**
+     * 到最近边线的距离，一线为0
+     */
+    public int edgeDistance(int point) {
+        return edgeDistance[point];
+    }
+
+    /**
+     * 棋盘内所有点的下标（只读）
+     */
+    public int[] points() {
+        return points;
+    }
+
+    /**
+     * 棋盘内点的掩码（只读）
+     */
+    public long[] onBoard() {
+        return onBoard;
+    }
+
+    /**
+     * 按位求相邻点：in中每个点的上下左右（不含in本身，除非它们也相邻）
+     * 边框列吸收了左右移位时的跨行，因此只需与棋盘掩码相与，in和out不能是同一个数组
+     */
+    public void neighbors(long[] in, long[] out) {
+        int s = stride;
+        for (int w = 0; w < words; w++) {
+            long prev = w > 0 ? in[w - 1] : 0L;
+            long next = w + 1 < words ? in[w + 1] : 0L;
+            long east = (in[w] << 1) | (prev >>> 63);
+            long west = (in[w] >>> 1) | (next << 63);
+            long south = (in[w] << s) | (prev >>> (64 - s));
+            long north = (in[w] >>> s) | (next << (64 - s));
+            out[w] = (east | west | south | north) & onBoard[w];
+        }
+    }
+
+    /**
+     * 按位膨胀：每个点向上下左右扩展一格，结果包含原来的点，in和out不能是同一个数组
+     */
+    public void dilate(long[] in, long[] out) {
+        neighbors(in, out);
+        for (int w = 0; w < words; w++) {
+            out[w] |= in[w];
+        }
+    }
+}
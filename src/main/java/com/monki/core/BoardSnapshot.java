@@ -0,0 +1,209 @@
+package com.monki.core;
+
+import com.monki.entity.MoveRecord;
+import com.monki.entity.Position;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 某一时刻的不可变局面快照
+ * 对局每次变化后由落子的线程生成新的快照并发布，分析线程和绘制代码只读快照，不加锁也不阻塞落子。
+ * 两个位平面按CHUNK_WORDS个long分块保存，内容没变的块直接共用上一个快照的数组（写时复制），
+ * 一手棋通常只复制一两块；落子记录是从最后一手往前串起来的不可变链表，新快照只在前一个的末尾追加一个节点。
+ * 发布的代价与变化的部分成正比，落子列表和棋盘上的棋子在第一次读取时才生成
+ */
+public final class BoardSnapshot {
+    private static final int CHUNK_SHIFT = 1;
+    private static final int CHUNK_WORDS = 1 << CHUNK_SHIFT;//每块的long数
+
+    private final BoardGeometry geometry;
+    private final long[][] black;//按块保存，不要修改
+    private final long[][] white;//按块保存，不要修改
+    private final long hash;
+    private final int koPoint;
+    private final int blackPrisoners;//黑方提掉的白子数
+    private final int whitePrisoners;//白方提掉的黑子数
+    private final int turn;//轮到的一方 -1黑 1白
+    private final int count;//下一手的手数
+    private final MoveNode lastNode;//按手数排列的最后一手，没有落子时为null
+    private final MoveRecord lastMove;
+    private volatile List<MoveRecord> moves;//第一次读取时生成
+    private volatile List<MoveRecord> stones;//第一次读取时生成
+
+    /**
+     * 落子记录的链表节点，发布后不再修改，多个快照共用相同的前缀
+     */
+    static final class MoveNode {
+        final MoveRecord move;
+        final MoveNode previous;
+        final int size;
+
+        MoveNode(MoveRecord move, MoveNode previous) {
+            this.move = move;
+            this.previous = previous;
+            this.size = previous == null ? 1 : previous.size + 1;
+        }
+    }
+
+    BoardSnapshot(BitBoard board, int turn, int count, MoveNode lastNode, MoveRecord lastMove, BoardSnapshot previous) {
+        this.geometry = board.getGeometry();
+        boolean same = previous != null && previous.geometry == geometry;
+        this.black = share(board.plane(BitBoard.BLACK), same ? previous.black : null);
+        this.white = share(board.plane(BitBoard.WHITE), same ? previous.white : null);
+        this.hash = board.getHash();
+        this.koPoint = board.getKoPoint();
+        this.blackPrisoners = board.getPrisoners(BitBoard.BLACK);
+        this.whitePrisoners = board.getPrisoners(BitBoard.WHITE);
+        this.turn = turn;
+        this.count = count;
+        this.lastNode = lastNode;
+        this.lastMove = lastMove;
+    }
+
+    //按块复制平面，与上一个快照相同的块直接共用
+    private static long[][] share(long[] plane, long[][] previous) {
+        long[][] chunks = new long[(plane.length + CHUNK_WORDS - 1) >>> CHUNK_SHIFT][];
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c << CHUNK_SHIFT;
+            int to = Math.min(from + CHUNK_WORDS, plane.length);
+            if (previous != null && sameWords(plane, from, to, previous[c])) {
+                chunks[c] = previous[c];
+            } else {
+                chunks[c] = Arrays.copyOfRange(plane, from, from + CHUNK_WORDS);
+            }
+        }
+        return chunks;
+    }
+
+    private static boolean sameWords(long[] plane, int from, int to, long[] chunk) {
+        for (int w = from; w < to; w++) {
+            if (plane[w] != chunk[w - from]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //拼回连续的位平面
+    private long[] flatten(long[][] chunks) {
+        long[] plane = new long[geometry.words];
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c << CHUNK_SHIFT;
+            System.arraycopy(chunks[c], 0, plane, from, Math.min(CHUNK_WORDS, plane.length - from));
+        }
+        return plane;
+    }
+
+    private static boolean testBit(long[][] chunks, int point) {
+        int word = point >>> 6;
+        return (chunks[word >>> CHUNK_SHIFT][word & (CHUNK_WORDS - 1)] & (1L << point)) != 0;
+    }
+
+    /**
+     * 获取某点状态 -1黑 1白 0空，边框点为OFF_BOARD
+     */
+    public int get(int point) {
+        if (!geometry.isOnBoard(point)) {
+            return BitBoard.OFF_BOARD;
+        }
+        if (testBit(black, point)) {
+            return BitBoard.BLACK;
+        }
+        return testBit(white, point) ? BitBoard.WHITE : BitBoard.EMPTY;
+    }
+
+    //获取某点状态（i为行，j为列，从1开始）
+    public int get(int i, int j) {
+        return get(geometry.point(i, j));
+    }
+
+    /**
+     * 重建一个可以落子的棋盘，棋串、气、哈希、劫和提子数都与快照一致，不含悔棋日志
+     */
+    public BitBoard toBitBoard() {
+        BitBoard board = new BitBoard(geometry);
+        board.load(flatten(black), flatten(white), koPoint, blackPrisoners, whitePrisoners);
+        return board;
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    public int getSize() {
+        return geometry.size;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public int getKoPoint() {
+        return koPoint;
+    }
+
+    /**
+     * 一方提掉的对方棋子总数
+     * @param color 提子的一方 -1黑 1白
+     */
+    public int getPrisoners(int color) {
+        return color == BitBoard.BLACK ? blackPrisoners : whitePrisoners;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * 棋盘上的棋子，按手数排列，不可修改
+     * 第一次读取时从最后一手往前找出每个有子的点上最近的一手
+     */
+    public List<MoveRecord> getStones() {
+        List<MoveRecord> list = stones;
+        if (list == null) {
+            MoveRecord[] visible = new MoveRecord[lastNode == null ? 0 : lastNode.size];
+            boolean[] seen = new boolean[geometry.length];
+            int n = visible.length;
+            for (MoveNode node = lastNode; node != null; node = node.previous) {
+                Position index = node.move.getIndex();
+                int point = geometry.point(index.getJ(), index.getI());
+                int color = node.move.getColor().equals(Color.BLACK) ? BitBoard.BLACK : BitBoard.WHITE;
+                if (!seen[point] && get(point) == color) {
+                    visible[--n] = node.move;
+                }
+                seen[point] = true;
+            }
+            list = Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(visible, n, visible.length)));
+            stones = list;
+        }
+        return list;
+    }
+
+    /**
+     * 所有落子，含已被提走的，按手数排列，不可修改
+     */
+    public List<MoveRecord> getMoves() {
+        List<MoveRecord> list = moves;
+        if (list == null) {
+            MoveRecord[] played = new MoveRecord[lastNode == null ? 0 : lastNode.size];
+            int n = played.length;
+            for (MoveNode node = lastNode; node != null; node = node.previous) {
+                played[--n] = node.move;
+            }
+            list = Collections.unmodifiableList(Arrays.asList(played));
+            moves = list;
+        }
+        return list;
+    }
+
+    public MoveRecord getLastMove() {
+        return lastMove;
+    }
+}
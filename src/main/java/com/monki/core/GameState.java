@@ -0,0 +1,299 @@
+package com.monki.core;
+
+import com.monki.entity.MoveRecord;
+import com.monki.entity.Position;
+import com.monki.entity.Stone;
+import com.monki.util.Config;
+
+import java.awt.Color;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 一盘棋的完整状态
+ * 棋盘、历史、落子记录、轮次和手数都是实例字段，互不共享，
+ * 同一进程可以同时保存大量对局，每个对局由一个线程独占操作即可。
+ * 每次变化后发布一个不可变快照，其他线程通过getSnapshot读取一致的局面
+ */
+public class GameState {
+    private final BitBoard board;//棋盘上落子的状态，黑白各一个位平面
+    private final PositionHistory history = new PositionHistory();//对局历史：落子记录和局面哈希
+    private final List<Stone> fallOn = new ArrayList<>();//已落子的信息
+    private final Deque<Stone> redoStack = new ArrayDeque<>();//悔棋后可以恢复的落子
+    private final Stone[] stoneAt;//每个点上的棋子，按board.point编码
+    private final Deque<Stone[]> capturedStones = new ArrayDeque<>();//每手提掉的棋子，悔棋时放回
+    private int turn = BitBoard.BLACK;//-1黑 1白
+    private int count = 1;//对弈手数
+    private Stone lastStone;//最后一颗落子，用于焦点绘制
+    private BoardSnapshot.MoveNode lastNode;//快照共用的落子记录链表，按手数排列的最后一手
+    private volatile BoardSnapshot snapshot;//最近一次变化后的局面快照
+
+    public GameState() {
+        this(Config.PATH);
+    }
+
+    /**
+     * @param size 棋盘路数，如9、13、19
+     */
+    public GameState(int size) {
+        board = new BitBoard(size);
+        stoneAt = new Stone[board.getGeometry().length];
+        publish();
+    }
+
+    //获取棋盘上某点的状态 -1黑 1白 0空（i为行，j为列，从1开始）
+    public int getState(int i, int j) {
+        return board.get(i, j);
+    }
+
+    /**
+     * 落子：提掉对方气为0的棋串，把被提的棋子标记为已提走，记录历史并交换轮次
+     * 调用前应已通过isLegal检查，落新的一手会清空可恢复的落子
+     * @return 提掉的棋子数
+     */
+    public int play(Stone stone) {
+        redoStack.clear();
+        return apply(stone);
+    }
+
+    private int apply(Stone stone) {
+        Position index = stone.getIndex();
+        int player = stone.getColor().equals(Color.BLACK) ? BitBoard.BLACK : BitBoard.WHITE;
+        int captured = place(index.getJ(), index.getI(), player);
+        capturedStones.push(markCaptured(captured));
+        stoneAt[pointOf(stone)] = stone;
+
+        // 按手数存入落子记录，网络对局中可能先收到后面的棋子
+        while (fallOn.size() < stone.getCount()) {
+            fallOn.add(null);
+        }
+        fallOn.set(stone.getCount() - 1, stone);
+        if (lastNode == null || stone.getCount() > lastNode.move.getCount()) {
+            lastNode = new BoardSnapshot.MoveNode(MoveRecord.of(stone), lastNode);
+        } else {
+            lastNode = linkMoves();
+        }
+
+        turn = -player;
+        count = stone.getCount() + 1;
+        lastStone = stone;
+        publish();
+        return captured;
+    }
+
+    private int place(int i, int j, int player) {
+        int point = board.point(i, j);
+        int captured = board.play(point, player);
+        history.record(point, player, board.getHash());
+        return captured;
+    }
+
+    /**
+     * 悔棋：撤销最近一手，被这手提走的棋子重新放回棋盘
+     * 棋盘按悔棋日志只还原变化的点，不复制棋盘
+     * @return 没有可悔的棋时返回false
+     */
+    public boolean undo() {
+        if (lastStone == null || history.size() == 0) {
+            return false;
+        }
+        int point = board.undo();
+        history.pop();
+        stoneAt[point] = null;
+
+        Stone undone = lastStone;
+        fallOn.set(undone.getCount() - 1, null);
+        while (!fallOn.isEmpty() && fallOn.get(fallOn.size() - 1) == null) {
+            fallOn.remove(fallOn.size() - 1);
+        }
+        for (Stone stone : capturedStones.pop()) {
+            stone.setRemoved(false);
+            stoneAt[pointOf(stone)] = stone;
+        }
+        redoStack.push(undone);
+        if (lastNode != null && lastNode.move.getCount() == undone.getCount()) {
+            lastNode = lastNode.previous;
+        } else {
+            lastNode = linkMoves();
+        }
+
+        turn = undone.getColor().equals(Color.BLACK) ? BitBoard.BLACK : BitBoard.WHITE;
+        count = undone.getCount();
+        lastStone = fallOn.isEmpty() ? null : fallOn.get(fallOn.size() - 1);
+        publish();
+        return true;
+    }
+
+    /**
+     * 恢复最近一次悔掉的落子
+     * @return 没有可恢复的落子时返回false
+     */
+    public boolean redo() {
+        if (redoStack.isEmpty()) {
+            return false;
+        }
+        apply(redoStack.pop());
+        return true;
+    }
+
+    //网络对局中先收到了后面的棋子时，按手数把落子记录重新串起来
+    private BoardSnapshot.MoveNode linkMoves() {
+        BoardSnapshot.MoveNode node = null;
+        for (Stone stone : fallOn) {
+            if (stone != null) {
+                node = new BoardSnapshot.MoveNode(MoveRecord.of(stone), node);
+            }
+        }
+        return node;
+    }
+
+    //生成并发布当前局面的快照，未变化的位平面分块和落子记录与上一个快照共用
+    private void publish() {
+        MoveRecord lastMove = null;
+        if (lastStone != null) {
+            lastMove = lastNode != null && lastNode.move.getCount() == lastStone.getCount()
+                    ? lastNode.move : MoveRecord.of(lastStone);
+        }
+        snapshot = new BoardSnapshot(board, turn, count, lastNode, lastMove, snapshot);
+    }
+
+    /**
+     * 最近一次变化后的不可变快照，任何线程都可以读取，不需要加锁
+     */
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    //把刚被提走的棋子标记为已提走，按点直接找到棋子，不扫描落子记录
+    private Stone[] markCaptured(int captured) {
+        Stone[] stones = new Stone[captured];
+        if (captured == 0) {
+            return stones;
+        }
+        int n = 0;
+        long[] mask = board.getCaptured();
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                int point = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                Stone stone = stoneAt[point];
+                if (stone != null) {
+                    stone.setRemoved(true);
+                    stones[n++] = stone;
+                    stoneAt[point] = null;
+                }
+            }
+        }
+        return n == captured ? stones : Arrays.copyOf(stones, n);
+    }
+
+    private int pointOf(Stone stone) {
+        Position index = stone.getIndex();
+        return board.point(index.getJ(), index.getI());
+    }
+
+    /**
+     * 一方提掉的对方棋子总数
+     * @param player 提子的一方 -1黑 1白
+     */
+    public int getPrisoners(int player) {
+        return board.getPrisoners(player);
+    }
+
+    /**
+     * 第n手（从0开始）提掉的点，按board.point编码
+     */
+    public int[] getCapturedPoints(int n) {
+        return board.getCapturedPoints(n);
+    }
+
+    /**
+     * 判断落子是否合法：空点、非自杀、不违反全局同形
+     */
+    public boolean isLegal(int i, int j, int player) {
+        return isOnBoard(i, j) && board.isLegal(board.point(i, j), player, history);
+    }
+
+    /**
+     * 当前轮到的一方所有合法落子点的掩码，按board.point编码
+     * @return 合法落子点的数量
+     */
+    public int legalMoves(long[] out) {
+        return board.legalMoves(turn, history, out);
+    }
+
+    //判断落子后是否为自杀
+    public boolean isSuicide(int i, int j, int player) {
+        return board.isSuicide(board.point(i, j), player);
+    }
+
+    //判断落子后是否与历史局面重复（全局同形）
+    public boolean isRepeated(int i, int j, int player) {
+        return history.contains(board.hashAfter(board.point(i, j), player));
+    }
+
+    //获得当前棋盘上某一方的棋串
+    public List<StoneString> getStrings(int player) {
+        return board.getStrings(player);
+    }
+
+    public boolean isOnBoard(int i, int j) {
+        return board.isOnBoard(i, j);
+    }
+
+    public int getSize() {
+        return board.getSize();
+    }
+
+    public BitBoard getBoard() {
+        return board;
+    }
+
+    public PositionHistory getHistory() {
+        return history;
+    }
+
+    public List<Stone> getFallOn() {
+        return fallOn;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Stone getLastStone() {
+        return lastStone;
+    }
+
+    //清空棋盘，重置为黑方先行
+    public void clear() {
+        board.clear();
+        history.clear();
+        fallOn.clear();
+        redoStack.clear();
+        capturedStones.clear();
+        Arrays.fill(stoneAt, null);
+        turn = BitBoard.BLACK;
+        count = 1;
+        lastStone = null;
+        lastNode = null;
+        publish();
+    }
+
+    @Override
+    public String toString() {
+        return board.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.monki.core;
+
+/**
+ * Bouzy 5/21影响力图
+ * 黑子记为-128，白子记为128，先做5次Zobrist膨胀把棋子的影响扩散到周围空点，
+ * 再做21次腐蚀削掉双方交界处的影响，剩下非零的空点就是估计的地，负值为黑方，正值为白方。
+ * 数值按点下标存放在一维数组里，两个数组轮流作为输入和输出，计算不分配对象，
+ * 不需要引擎就能即时给出形势的大致估计。一个实例只能由一个线程使用
+ */
+public final class Influence {
+    public static final int DILATIONS = 5;
+    public static final int EROSIONS = 21;
+    private static final int STONE = 128;//棋子的初始影响力
+
+    private final BoardGeometry geometry;
+    private final int[] adjacent;
+    private int[] value;//最近一次计算的结果
+    private int[] next;
+
+    public Influence(BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.adjacent = geometry.neighborTable();
+        value = new int[geometry.length];
+        next = new int[geometry.length];
+    }
+
+    /**
+     * 按5/21计算影响力
+     */
+    public void compute(BitBoard board) {
+        compute(board, null, DILATIONS, EROSIONS);
+    }
+
+    /**
+     * 计算影响力
+     * @param dead 当作空点的死子，没有时为null
+     * @param dilations 膨胀次数
+     * @param erosions 腐蚀次数
+     */
+    public void compute(BitBoard board, long[] dead, int dilations, int erosions) {
+        for (int p : geometry.points()) {
+            int stone = board.get(p);
+            value[p] = dead != null && BitBoard.testBit(dead, p) ? 0 : stone * STONE;
+        }
+        for (int k = 0; k < dilations; k++) {
+            dilate();
+        }
+        for (int k = 0; k < erosions; k++) {
+            erode();
+        }
+    }
+
+    //膨胀：不与对方影响相邻的点，每有一个己方影响的相邻点就加强1
+    private void dilate() {
+        for (int p : geometry.points()) {
+            int v = value[p];
+            int positive = 0;
+            int negative = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                int n = value[adjacent[(p << 2) + dir]];
+                if (n > 0) {
+                    positive++;
+                } else if (n < 0) {
+                    negative++;
+                }
+            }
+            if (v >= 0 && negative == 0) {
+                v += positive;
+            } else if (v <= 0 && positive == 0) {
+                v -= negative;
+            }
+            next[p] = v;
+        }
+        swap();
+    }
+
+    //腐蚀：每有一个不属于己方影响的棋盘内相邻点就减弱1，减到0为止
+    private void erode() {
+        for (int p : geometry.points()) {
+            int v = value[p];
+            if (v != 0) {
+                int against = 0;
+                for (int dir = 0; dir < 4; dir++) {
+                    int n = adjacent[(p << 2) + dir];
+                    if (geometry.isOnBoard(n) && (v > 0 ? value[n] <= 0 : value[n] >= 0)) {
+                        against++;
+                    }
+                }
+                v = v > 0 ? Math.max(0, v - against) : Math.min(0, v + against);
+            }
+            next[p] = v;
+        }
+        swap();
+    }
+
+    private void swap() {
+        int[] t = value;
+        value = next;
+        next = t;
+    }
+
+    /**
+     * 某点的影响力，负值为黑方，正值为白方
+     */
+    public int get(int point) {
+        return value[point];
+    }
+
+    /**
+     * 某点的归属 -1黑 1白 0中立
+     */
+    public int getOwner(int point) {
+        return Integer.signum(value[point]);
+    }
+
+    /**
+     * 一方估计的地，即归属该方的空点数
+     */
+    public int getTerritory(BitBoard board, int color) {
+        int count = 0;
+        for (int p : geometry.points()) {
+            if (board.get(p) == BitBoard.EMPTY && getOwner(p) == color) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+}
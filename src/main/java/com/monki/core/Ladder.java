@@ -0,0 +1,187 @@
+package com.monki.core;
+
+/**
+ * 征子计算
+ * 用落子和悔棋直接在棋盘上推演征子：被打吃的一方只考虑长出和提掉打吃自己的子，
+ * 征子方只考虑从两口气中的一边打吃，分支很少，通常几十手内就能得出结果，过程不分配对象。
+ * 推演的手数和落子数都有上限，超出时按能逃出处理。
+ * read开头的方法直接在传入的棋盘上推演，结束时用悔棋还原；另外两个方法在内部的草稿棋盘上推演，
+ * 结果按局面哈希和棋串位置缓存在有损的直接映射表里。一个实例只能由一个线程使用
+ */
+public final class Ladder {
+    private static final int MAX_DEPTH = 120;//最多推演的手数
+    private static final int MAX_NODES = 400;//一次计算最多的落子数
+    private static final int MAX_MOVES = 8;//逃的一方每一步最多考虑的点数
+    private static final int CACHE_SIZE = 1 << 12;
+
+    // 缓存中的结果，0表示空
+    private static final byte ESCAPED = 1;
+    private static final byte CAPTURED = 2;
+
+    private final BoardGeometry geometry;
+    private BitBoard scratch;//草稿棋盘，第一次用到时创建
+    private final int[] moves = new int[(MAX_DEPTH + 1) * MAX_MOVES];//每层推演的候选点
+    private final int[] liberties = new int[2];
+    private final long[] cacheKeys = new long[CACHE_SIZE];
+    private final byte[] cacheResults = new byte[CACHE_SIZE];
+    private int nodes;
+
+    public Ladder(BoardGeometry geometry) {
+        this.geometry = geometry;
+    }
+
+    /**
+     * 只剩一口气的棋串轮到自己走时，是否无论怎么逃都会被征吃，结果会被缓存
+     * @param board 局面，不会被修改，路数须与构造时一致
+     * @param point 棋串中的任一点
+     */
+    public boolean isCaptured(BitBoard board, int point) {
+        if (board.get(point) == BitBoard.EMPTY || board.getLiberty(point) != 1) {
+            return false;
+        }
+        return cached(board, point, 0);
+    }
+
+    /**
+     * 有两口气的棋串轮到对方走时，对方能否征吃它，结果会被缓存
+     * @param board 局面，不会被修改，路数须与构造时一致
+     * @param point 棋串中的任一点
+     */
+    public boolean canCapture(BitBoard board, int point) {
+        if (board.get(point) == BitBoard.EMPTY || board.getLiberty(point) != 2) {
+            return false;
+        }
+        return cached(board, point, 1);
+    }
+
+    /**
+     * 同isCaptured，但直接在board上推演，不使用缓存，返回前board还原为原来的局面
+     */
+    public boolean readCaptured(BitBoard board, int point) {
+        if (board.get(point) == BitBoard.EMPTY || board.getLiberty(point) != 1) {
+            return false;
+        }
+        nodes = 0;
+        return defend(board, point, 0);
+    }
+
+    /**
+     * 同canCapture，但直接在board上推演，不使用缓存，返回前board还原为原来的局面
+     */
+    public boolean readCanCapture(BitBoard board, int point) {
+        if (board.get(point) == BitBoard.EMPTY || board.getLiberty(point) != 2) {
+            return false;
+        }
+        nodes = 0;
+        return attack(board, point, 0);
+    }
+
+    /**
+     * color在move处长出是否救不回相邻的被打吃棋串，这样的长出只会让对方多吃子
+     * 直接在board上推演，返回前还原
+     */
+    public boolean isFutileEscape(BitBoard board, int move, int color) {
+        boolean atari = false;
+        for (int dir = 0; dir < 4; dir++) {
+            int n = board.neighbor(move, dir);
+            if (board.get(n) == color && board.isInAtari(n)) {
+                if (!readCaptured(board, n)) {
+                    return false;
+                }
+                atari = true;
+            }
+        }
+        return atari;
+    }
+
+    private boolean cached(BitBoard board, int point, int mode) {
+        long key = board.getHash() ^ (point * 2L + mode + 1) * 0x9E3779B97F4A7C15L;
+        int slot = (int) (key >>> 52) & (CACHE_SIZE - 1);
+        if (cacheKeys[slot] == key && cacheResults[slot] != 0) {
+            return cacheResults[slot] == CAPTURED;
+        }
+        if (scratch == null) {
+            scratch = new BitBoard(geometry);
+        }
+        scratch.copyFrom(board);
+        nodes = 0;
+        boolean captured = mode == 0 ? defend(scratch, point, 0) : attack(scratch, point, 0);
+        cacheKeys[slot] = key;
+        cacheResults[slot] = captured ? CAPTURED : ESCAPED;
+        return captured;
+    }
+
+    //逃的一方走：提掉打吃自己的子或者长出，任何一种能逃出就返回false
+    private boolean defend(BitBoard board, int point, int depth) {
+        if (depth >= MAX_DEPTH || ++nodes > MAX_NODES) {
+            return false;
+        }
+        int color = board.get(point);
+        int base = depth * MAX_MOVES;
+        int count = 0;
+        // 先收集候选点，推演时棋串的棋子环会被悔棋重建，不能边遍历边落子
+        int stone = point;
+        do {
+            for (int dir = 0; dir < 4 && count < MAX_MOVES - 1; dir++) {
+                int n = board.neighbor(stone, dir);
+                if (board.get(n) == -color && board.isInAtari(n)) {
+                    board.getLiberties(n, liberties);
+                    count = addMove(base, count, liberties[0]);
+                }
+            }
+            stone = board.nextStone(stone);
+        } while (stone != point);
+        board.getLiberties(point, liberties);
+        count = addMove(base, count, liberties[0]);
+
+        for (int k = 0; k < count; k++) {
+            int move = moves[base + k];
+            if (!board.isLegal(move, color, null)) {
+                continue;
+            }
+            board.play(move, color);
+            int libs = board.getLiberty(point);
+            boolean escaped = libs >= 3 || libs == 2 && !attack(board, point, depth + 1);
+            board.undo();
+            if (escaped) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //征子方走：从两口气中的一边打吃，任何一边能征吃就返回true
+    private boolean attack(BitBoard board, int point, int depth) {
+        if (depth >= MAX_DEPTH || ++nodes > MAX_NODES) {
+            return false;
+        }
+        int color = -board.get(point);
+        int base = depth * MAX_MOVES;
+        board.getLiberties(point, liberties);
+        moves[base] = liberties[0];
+        moves[base + 1] = liberties[1];
+        for (int k = 0; k < 2; k++) {
+            int move = moves[base + k];
+            if (!board.isLegal(move, color, null)) {
+                continue;
+            }
+            board.play(move, color);
+            boolean captured = board.getLiberty(point) == 1 && defend(board, point, depth + 1);
+            board.undo();
+            if (captured) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int addMove(int base, int count, int move) {
+        for (int k = 0; k < count; k++) {
+            if (moves[base + k] == move) {
+                return count;
+            }
+        }
+        moves[base + count] = move;
+        return count + 1;
+    }
+}
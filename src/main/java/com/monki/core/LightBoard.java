@@ -0,0 +1,327 @@
+package com.monki.core;
+
+/**
+ * 随机模拟专用的轻量棋盘
+ * 与BitBoard相比只保留模拟需要的信息：每个点的状态、棋串的环形链表和伪气。
+ * 伪气按棋子与相邻空点的每一对相邻关系计数，同一口气可能被计入多次，落子和提子时只需加减，不需要去重；
+ * 另外累加这些气点的和与平方和，所有伪气都是同一个点时（和的平方等于个数乘平方和）棋串正好被打吃，
+ * 这样叫吃判断仍然准确，而且能直接算出唯一的气。没有哈希、悔棋日志和增量的3x3图案，图案用到时现算。
+ * 缓冲区在构造时分配好，落子和复制局面都不分配对象。一个实例只能由一个线程使用
+ */
+final class LightBoard {
+    private final BoardGeometry geometry;
+    private final int length;
+    private final int stride;//相邻点用固定的下标差得到，不查表
+    private final int[] offsets;//四个相邻点的下标差
+    private final byte[] cells;
+    private final int[] head;//棋串的代表点，只对有子的点有意义
+    private final int[] next;//棋串中下一个棋子，构成环
+    private final int[] stones;//棋串的子数，记在代表点上
+    private final int[] libs;//棋串的伪气数，记在代表点上
+    private final int[] libSum;//伪气点下标之和
+    private final int[] libSumSq;//伪气点下标的平方和
+    private final int[] captured;//最近一次落子提掉的点
+    private int capturedCount;
+    private int koPoint = -1;
+
+    // 计分用的缓冲区
+    private final int[] owner;//终局每个点的归属 -1黑 1白 0无
+    private final int[] stack;
+    private final int[] region;
+
+    LightBoard(BoardGeometry geometry) {
+        this.geometry = geometry;
+        this.length = geometry.length;
+        this.stride = geometry.stride;
+        this.offsets = new int[]{-stride, stride, -1, 1};
+        cells = new byte[length];
+        head = new int[length];
+        next = new int[length];
+        stones = new int[length];
+        libs = new int[length];
+        libSum = new int[length];
+        libSumSq = new int[length];
+        captured = new int[geometry.pointCount];
+        owner = new int[length];
+        stack = new int[geometry.pointCount];
+        region = new int[geometry.pointCount];
+        for (int p = 0; p < length; p++) {
+            cells[p] = (byte) (geometry.isOnBoard(p) ? BitBoard.EMPTY : BitBoard.OFF_BOARD);
+        }
+    }
+
+    /**
+     * 复制BitBoard的局面：直接沿用它的点状态和棋串链表，再按相邻的空点统计伪气
+     */
+    void load(BitBoard board) {
+        board.copyCells(cells, head, next);
+        koPoint = board.getKoPoint();
+        for (int p : geometry.points()) {
+            if (cells[p] != BitBoard.EMPTY && head[p] == p) {
+                stones[p] = 0;
+                libs[p] = 0;
+                libSum[p] = 0;
+                libSumSq[p] = 0;
+            }
+        }
+        for (int p : geometry.points()) {
+            if (cells[p] == BitBoard.EMPTY) {
+                continue;
+            }
+            int h = head[p];
+            stones[h]++;
+            for (int dir = 0; dir < 4; dir++) {
+                int n = p + offsets[dir];
+                if (cells[n] == BitBoard.EMPTY) {
+                    addLiberty(h, n);
+                }
+            }
+        }
+    }
+
+    int get(int point) {
+        return cells[point];
+    }
+
+    int getKoPoint() {
+        return koPoint;
+    }
+
+    /**
+     * 棋子所在的棋串是否只剩一口气
+     */
+    boolean isInAtari(int point) {
+        int h = head[point];
+        return (long) libs[h] * libSumSq[h] == (long) libSum[h] * libSum[h];
+    }
+
+    /**
+     * 被打吃的棋串唯一的气，调用前应已用isInAtari确认
+     */
+    int atariLiberty(int point) {
+        int h = head[point];
+        return libSum[h] / libs[h];
+    }
+
+    /**
+     * 棋串的伪气数，共同的气按相邻的子数重复计入，不少于真实的气数
+     */
+    int pseudoLiberties(int point) {
+        return libs[head[point]];
+    }
+
+    /**
+     * 是否是color一方的眼，规则与BitBoard.isEye相同
+     */
+    boolean isEye(int point, int color) {
+        boolean edge = false;
+        for (int dir = 0; dir < 4; dir++) {
+            int stone = cells[point + offsets[dir]];
+            if (stone == BitBoard.OFF_BOARD) {
+                edge = true;
+            } else if (stone != color) {
+                return false;
+            }
+        }
+        int enemies = (cells[point - stride - 1] == -color ? 1 : 0) + (cells[point - stride + 1] == -color ? 1 : 0)
+                + (cells[point + stride - 1] == -color ? 1 : 0) + (cells[point + stride + 1] == -color ? 1 : 0);
+        return edge ? enemies == 0 : enemies < 2;
+    }
+
+    /**
+     * 在空点落子是否是自杀：没有相邻空点、相邻己方棋串都只剩这口气、也提不掉对方
+     */
+    boolean isSuicide(int point, int color) {
+        for (int dir = 0; dir < 4; dir++) {
+            int n = point + offsets[dir];
+            int stone = cells[n];
+            if (stone == BitBoard.EMPTY) {
+                return false;
+            }
+            if (stone == BitBoard.OFF_BOARD) {
+                continue;
+            }
+            // 相邻的棋串都以point为气，被打吃就说明point是它唯一的气
+            if ((stone == color) != isInAtari(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 周围8个点的3x3图案编码，与BitBoard.pattern相同（上下左右、左上右上左下右下各占2位），现算而不是增量维护
+     */
+    int pattern(int point) {
+        int s = stride;
+        return (cells[point - s] & 3) | (cells[point + s] & 3) << 2
+                | (cells[point - 1] & 3) << 4 | (cells[point + 1] & 3) << 6
+                | (cells[point - s - 1] & 3) << 8 | (cells[point - s + 1] & 3) << 10
+                | (cells[point + s - 1] & 3) << 12 | (cells[point + s + 1] & 3) << 14;
+    }
+
+    /**
+     * 落子并提掉没气的对方棋串，调用前应已确认合法
+     * @return 提掉的子数，被提的点用getCaptured读取
+     */
+    int play(int point, int color) {
+        cells[point] = (byte) color;
+        head[point] = point;
+        next[point] = point;
+        stones[point] = 1;
+        libs[point] = 0;
+        libSum[point] = 0;
+        libSumSq[point] = 0;
+        capturedCount = 0;
+        // 一次扫描相邻点：相邻棋串先去掉point这口气，己方的随即合并，对方没气的随即提掉。
+        // 同一棋串从两个方向相邻时去掉两次，第二次才可能没气，提子加的气算在当时的代表点上，合并时一并累加
+        for (int dir = 0; dir < 4; dir++) {
+            int n = point + offsets[dir];
+            int stone = cells[n];
+            if (stone == BitBoard.EMPTY) {
+                addLiberty(head[point], n);
+            } else if (stone == color) {
+                removeLiberty(head[n], point);
+                merge(head[point], head[n]);
+            } else if (stone == -color) {
+                int h = head[n];
+                removeLiberty(h, point);
+                if (libs[h] == 0) {
+                    capture(h);
+                }
+            }
+        }
+        int h = head[point];
+        koPoint = capturedCount == 1 && stones[h] == 1 && libs[h] == 1 ? captured[0] : -1;
+        return capturedCount;
+    }
+
+    /**
+     * 虚手，解除劫
+     */
+    void pass() {
+        koPoint = -1;
+        capturedCount = 0;
+    }
+
+    int getCaptured(int k) {
+        return captured[k];
+    }
+
+    private void addLiberty(int h, int point) {
+        libs[h]++;
+        libSum[h] += point;
+        libSumSq[h] += point * point;
+    }
+
+    private void removeLiberty(int h, int point) {
+        libs[h]--;
+        libSum[h] -= point;
+        libSumSq[h] -= point * point;
+    }
+
+    //把两个棋串合并，子数少的并入子数多的
+    private void merge(int a, int b) {
+        if (a == b) {
+            return;
+        }
+        if (stones[a] < stones[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int p = b;
+        do {
+            head[p] = a;
+            p = next[p];
+        } while (p != b);
+        int t = next[a];
+        next[a] = next[b];
+        next[b] = t;
+        stones[a] += stones[b];
+        libs[a] += libs[b];
+        libSum[a] += libSum[b];
+        libSumSq[a] += libSumSq[b];
+    }
+
+    //提掉整个棋串，被提的点成为相邻棋串的气
+    private void capture(int h) {
+        int p = h;
+        do {
+            cells[p] = BitBoard.EMPTY;
+            captured[capturedCount++] = p;
+            p = next[p];
+        } while (p != h);
+        do {
+            for (int dir = 0; dir < 4; dir++) {
+                int n = p + offsets[dir];
+                int stone = cells[n];
+                if (stone != BitBoard.EMPTY && stone != BitBoard.OFF_BOARD) {
+                    addLiberty(head[n], p);
+                }
+            }
+            p = next[p];
+        } while (p != h);
+    }
+
+    /**
+     * Tromp-Taylor数子法计分：棋子归各自一方，只与一方棋子相邻的空区域归该方
+     * @return 白方领先的目数（含贴目），负数表示黑方领先
+     */
+    double score(double komi) {
+        for (int p : geometry.points()) {
+            owner[p] = cells[p] == BitBoard.EMPTY ? 2 : cells[p];//2表示还没填充的空点
+        }
+        int black = 0;
+        int white = 0;
+        for (int p : geometry.points()) {
+            if (owner[p] == 2) {
+                fill(p);
+            }
+            if (owner[p] == BitBoard.BLACK) {
+                black++;
+            } else if (owner[p] == BitBoard.WHITE) {
+                white++;
+            }
+        }
+        return white - black + komi;
+    }
+
+    //填充seed所在的空区域，按相邻棋子的颜色决定整块的归属
+    private void fill(int seed) {
+        int top = 0;
+        int size = 0;
+        int borders = 0;//相邻棋子的颜色，黑为1、白为2
+        owner[seed] = 0;
+        stack[top++] = seed;
+        while (top > 0) {
+            int p = stack[--top];
+            region[size++] = p;
+            for (int dir = 0; dir < 4; dir++) {
+                int n = p + offsets[dir];
+                int stone = cells[n];
+                if (stone == BitBoard.EMPTY) {
+                    if (owner[n] == 2) {
+                        owner[n] = 0;
+                        stack[top++] = n;
+                    }
+                } else if (stone == BitBoard.BLACK) {
+                    borders |= 1;
+                } else if (stone == BitBoard.WHITE) {
+                    borders |= 2;
+                }
+            }
+        }
+        int color = borders == 1 ? BitBoard.BLACK : borders == 2 ? BitBoard.WHITE : 0;
+        for (int k = 0; k < size; k++) {
+            owner[region[k]] = color;
+        }
+    }
+
+    /**
+     * 最近一次计分某点的归属 -1黑 1白 0无
+     */
+    int getOwner(int point) {
+        return owner[point];
+    }
+}
@@ -0,0 +1,129 @@
+package com.monki.core;
+
+import java.util.Arrays;
+
+/**
+ * long值的开放寻址哈希集合
+ * 用于保存局面哈希，避免HashSet<Long>装箱产生的对象
+ */
+public class LongHashSet {
+    private static final long FREE = 0L;//0作为空槽标记，值0单独记录
+
+    private long[] table;
+    private int size;
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(64);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        table = new long[capacity];
+    }
+
+    public boolean add(long value) {
+        if (value == FREE) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        size++;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * 删除一个值，后面同一探测链上的值向前移动填补空位
+     */
+    public boolean remove(long value) {
+        if (value == FREE) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == value) {
+                int gap = slot;
+                int next = (slot + 1) & mask;
+                while (table[next] != FREE) {
+                    int ideal = mix(table[next]) & mask;
+                    if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                        table[gap] = table[next];
+                        gap = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                table[gap] = FREE;
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, FREE);
+        size = 0;
+        containsZero = false;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        int mask = capacity - 1;
+        for (long value : old) {
+            if (value != FREE) {
+                int slot = mix(value) & mask;
+                while (table[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    //Zobrist哈希本身已足够随机，这里只把高位混入低位
+    private static int mix(long value) {
+        return (int) (value ^ (value >>> 32));
+    }
+}
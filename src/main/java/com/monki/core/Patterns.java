@@ -0,0 +1,185 @@
+package com.monki.core;
+
+/**
+ * 3x3图案权重表
+ * BitBoard为每个点增量维护周围8个点的16位编码（每点2位：0空 1白 2边框 3黑，
+ * 顺序为上下左右、左上右上左下右下），这里按编码预先算好65536项的权重，查表即得落子的先验。
+ * 图案来自MoGo的手工图案（扳、切断、边上的下立等），展开了8种对称和黑白互换，与轮到哪一方无关
+ */
+public final class Patterns {
+    public static final int QUIET = 1;//周围没有棋子
+    public static final int CONTACT = 2;//与棋子接触，但不匹配图案
+    public static final int MATCH = 8;//匹配图案的最低权重
+
+    private static final byte[] WEIGHTS = new byte[1 << 16];
+    private static final long[] MATCHES = new long[(1 << 16) >>> 6];//匹配图案的编码，每个编码一位，8KB，模拟时常驻一级缓存
+
+    // 每个图案三行，中心为候选点：X O 双方棋子，x 不是X，o 不是O，. 空，# 边框，? 任意
+    private static final String[][] SOURCES = {
+            {"XOX", "...", "???"},//扳：包围的扳
+            {"XO.", "...", "?.?"},//扳：不切断的扳
+            {"XO?", "X..", "x.?"},//扳：曲
+            {".O.", "X..", "..."},//托、尖顶
+            {"XO?", "O.o", "?o?"},//切断：没有保护的切断
+            {"XO?", "O.X", "???"},//切断：已被窥的切断
+            {"?X?", "O.O", "ooo"},//切断：出
+            {"OX?", "o.O", "???"},//切断：桂马切
+            {"X.?", "O.?", "###"},//边：追
+            {"OX?", "X.O", "###"},//边：挡住边上的切断
+            {"?X?", "x.O", "###"},//边：挡住边上的连接
+            {"?XO", "x.x", "###"},//边：下立
+            {"?OX", "X.O", "###"},//边：切断
+    };
+    private static final int[] SOURCE_WEIGHTS = {10, 10, 10, 8, 12, 12, 12, 10, 8, 10, 8, 8, 10};
+
+    // 3x3网格中（行，列）对应的编码位置，中心为-1
+    private static final int[][] SLOT = {
+            {4, 0, 5},
+            {2, -1, 3},
+            {6, 1, 7},
+    };
+
+    static {
+        for (int code = 0; code < WEIGHTS.length; code++) {
+            boolean contact = false;
+            for (int k = 0; k < 8; k++) {
+                int c = (code >>> (k << 1)) & 3;
+                if (c == 1 || c == 3) {
+                    contact = true;
+                }
+            }
+            WEIGHTS[code] = (byte) (contact ? CONTACT : QUIET);
+        }
+        for (int n = 0; n < SOURCES.length; n++) {
+            for (int symmetry = 0; symmetry < 8; symmetry++) {
+                for (int swap = 0; swap < 2; swap++) {
+                    int[] allowed = new int[8];
+                    for (int r = 0; r < 3; r++) {
+                        for (int c = 0; c < 3; c++) {
+                            int slot = SLOT[r][c];
+                            if (slot < 0) {
+                                continue;
+                            }
+                            int[] rc = transform(r, c, symmetry);
+                            allowed[SLOT[rc[0]][rc[1]]] = allowedCodes(SOURCES[n][r].charAt(c), swap == 1);
+                        }
+                    }
+                    expand(allowed, 0, 0, SOURCE_WEIGHTS[n]);
+                }
+            }
+        }
+        for (int code = 0; code < WEIGHTS.length; code++) {
+            if (WEIGHTS[code] >= MATCH) {
+                MATCHES[code >>> 6] |= 1L << code;
+            }
+        }
+    }
+
+    private Patterns() {
+    }
+
+    /**
+     * 图案编码对应的权重
+     */
+    public static int weight(int pattern) {
+        return WEIGHTS[pattern];
+    }
+
+    /**
+     * 是否匹配了某个手工图案
+     */
+    public static boolean isMatch(int pattern) {
+        return (MATCHES[pattern >>> 6] & (1L << pattern)) != 0;
+    }
+
+    /**
+     * 按图案权重挑出最值得考虑的几个落子点，供界面快速提示
+     * 只考虑匹配图案的合法点，不填己方眼，权重相同时优先三、四线
+     * @param out 输出的落子点，按推荐程度从高到低排列
+     * @return 实际挑出的数量
+     */
+    public static int suggest(BitBoard board, int color, PositionHistory history, int[] out) {
+        int count = 0;
+        for (int p : board.getGeometry().points()) {
+            if (board.get(p) != BitBoard.EMPTY || !isMatch(board.pattern(p))) {
+                continue;
+            }
+            if (board.isEye(p, color) || !board.isLegal(p, color, history)) {
+                continue;
+            }
+            int rank = rank(board, p);
+            int k = Math.min(count, out.length - 1);
+            if (count == out.length && rank <= rank(board, out[k])) {
+                continue;
+            }
+            while (k > 0 && rank(board, out[k - 1]) < rank) {
+                out[k] = out[k - 1];
+                k--;
+            }
+            out[k] = p;
+            if (count < out.length) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int rank(BitBoard board, int point) {
+        int distance = board.getGeometry().edgeDistance(point);
+        return weight(board.pattern(point)) * 4 + (distance == 2 || distance == 3 ? 2 : distance > 3 ? 1 : 0);
+    }
+
+    //按每个位置允许的状态展开所有编码
+    private static void expand(int[] allowed, int slot, int code, int weight) {
+        if (slot == 8) {
+            if (WEIGHTS[code] < weight) {
+                WEIGHTS[code] = (byte) weight;
+            }
+            return;
+        }
+        for (int c = 0; c < 4; c++) {
+            if ((allowed[slot] & (1 << c)) != 0) {
+                expand(allowed, slot + 1, code | (c << (slot << 1)), weight);
+            }
+        }
+    }
+
+    //图案字符允许的状态集合，第c位表示编码c（0空 1白 2边框 3黑）
+    private static int allowedCodes(char ch, boolean swap) {
+        if (swap) {
+            ch = ch == 'X' ? 'O' : ch == 'O' ? 'X' : ch == 'x' ? 'o' : ch == 'o' ? 'x' : ch;
+        }
+        switch (ch) {
+            case '.':
+                return 1;
+            case 'O':
+                return 1 << 1;
+            case '#':
+                return 1 << 2;
+            case 'X':
+                return 1 << 3;
+            case 'x':
+                return 1 | (1 << 1) | (1 << 2);
+            case 'o':
+                return 1 | (1 << 2) | (1 << 3);
+            default:
+                return 15;
+        }
+    }
+
+    //3x3网格的8种对称变换：symmetry的第0位左右翻转，第1位上下翻转，第2位沿对角线转置
+    private static int[] transform(int r, int c, int symmetry) {
+        if ((symmetry & 1) != 0) {
+            c = 2 - c;
+        }
+        if ((symmetry & 2) != 0) {
+            r = 2 - r;
+        }
+        if ((symmetry & 4) != 0) {
+            int t = r;
+            r = c;
+            c = t;
+        }
+        return new int[]{r, c};
+    }
+}
@@ -0,0 +1,212 @@
+package com.monki.core;
+
+/**
+ * 随机对局模拟（蒙特卡洛playout）
+ * 从给定局面开始双方随机落合法的棋直到终局：不填自己的眼，不下自杀和劫，双方连续虚手或达到手数上限时结束。
+ * 对方上一手打吃了己方棋串且长出后气够多时先长出，其次在上一手周围匹配3x3图案的点中随机选一个（MoGo式），
+ * 否则在所有空点中随机选。长出后只有两口气时默认不长，打开征子计算后才推演征子决定是否长出，
+ * 推演的代价比整盘模拟的其余部分还高，所以轻量模拟不做。
+ * 模拟在只有伪气、没有哈希和悔棋日志的LightBoard上进行，3x3图案用到时现算；
+ * 打开征子计算时另外在BitBoard上同步落子，供征子推演使用。
+ * 棋盘、空点列表等缓冲区在构造时分配好，每次模拟只复制局面，过程不分配对象。
+ * 一个实例只能由一个线程使用，多线程模拟时每个线程各建一个
+ */
+public class Playout {
+    private final BoardGeometry geometry;
+    private final LightBoard board;
+    private final int[] empties;//当前所有空点
+    private final int[] emptyIndex;//空点在empties中的位置
+    private final int[] around;//周围8个点的下标差，顺序同BoardGeometry.aroundTable，前4个是相邻点
+    private final int[] candidates = new int[8];//上一手周围匹配图案的点
+    private Ladder ladder;//打开征子计算时创建
+    private BitBoard fullBoard;//打开征子计算时与board同步落子，供征子推演
+    private final int maxMoves;//手数上限，防止长生等循环局面
+    private boolean ladderReading;//长出后只有两口气时是否推演征子
+    private int emptyCount;
+    private int moves;
+    private long seed;//xorshift随机数状态
+
+    public Playout(BoardGeometry geometry, long seed) {
+        this.geometry = geometry;
+        this.board = new LightBoard(geometry);
+        this.empties = new int[geometry.pointCount];
+        this.emptyIndex = new int[geometry.length];
+        int s = geometry.stride;
+        this.around = new int[]{-s, s, -1, 1, -s - 1, -s + 1, s - 1, s + 1};
+        this.maxMoves = geometry.pointCount * 3;
+        this.seed = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    /**
+     * 从给定局面模拟到终局
+     * @param position 起始局面，不会被修改
+     * @param color 先走的一方 -1黑 1白
+     * @param komi 贴目
+     * @return 终局时白方领先的目数（数子法，含贴目），负数表示黑方领先
+     */
+    public double run(BitBoard position, int color, double komi) {
+        board.load(position);
+        if (ladderReading) {
+            fullBoard.copyFrom(position);
+        }
+        emptyCount = 0;
+        for (int p : geometry.points()) {
+            if (board.get(p) == BitBoard.EMPTY) {
+                emptyIndex[p] = emptyCount;
+                empties[emptyCount++] = p;
+            }
+        }
+
+        moves = 0;
+        int passes = 0;
+        int last = -1;
+        while (passes < 2 && moves < maxMoves) {
+            int point = last < 0 ? -1 : selectEscape(last, color);
+            if (point < 0 && last >= 0) {
+                point = selectPattern(last, color);
+            }
+            if (point < 0) {
+                point = selectMove(color);
+            }
+            if (point < 0) {
+                passes++;
+                board.pass();//解除劫，提劫的一方之后可以粘劫
+                if (ladderReading) {
+                    fullBoard.pass(color);
+                }
+            } else {
+                passes = 0;
+                play(point, color);
+            }
+            last = point;
+            moves++;
+            color = -color;
+        }
+        return board.score(komi);
+    }
+
+    //上一手打吃了己方棋串时，征子能逃出就在唯一的气上长出，否则返回-1
+    private int selectEscape(int last, int color) {
+        for (int dir = 0; dir < 4; dir++) {
+            int n = last + around[dir];
+            if (board.get(n) != color || !board.isInAtari(n)) {
+                continue;
+            }
+            int p = board.atariLiberty(n);
+            if (p == board.getKoPoint() || board.isSuicide(p, color)) {
+                continue;
+            }
+            // 长出后至少有三口气时直接长，只剩一口气时不长，两口气时只在打开征子计算时推演
+            int libs = libertiesAfter(p, color);
+            if (libs >= 3 || libs == 2 && ladderReading && !ladder.readCaptured(fullBoard, n)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    //估计在point长出后的气数：周围的空点加上相邻己方棋串的其他伪气，可能多算共同的气
+    private int libertiesAfter(int point, int color) {
+        int count = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            int n = point + around[dir];
+            int stone = board.get(n);
+            if (stone == BitBoard.EMPTY) {
+                count++;
+            } else if (stone == color) {
+                count += board.pseudoLiberties(n) - 1;
+            }
+        }
+        return count;
+    }
+
+    //上一手周围匹配图案的合法点中随机选一个，没有则返回-1
+    private int selectPattern(int last, int color) {
+        int count = 0;
+        int ko = board.getKoPoint();
+        for (int k = 0; k < 8; k++) {
+            int p = last + around[k];
+            if (board.get(p) == BitBoard.EMPTY && Patterns.isMatch(board.pattern(p))
+                    && p != ko && !board.isEye(p, color) && !board.isSuicide(p, color)) {
+                candidates[count++] = p;
+            }
+        }
+        return count == 0 ? -1 : candidates[nextInt(count)];
+    }
+
+    //从随机位置开始扫描空点，取第一个合法且不是己方眼位的点，没有则虚手返回-1
+    private int selectMove(int color) {
+        if (emptyCount == 0) {
+            return -1;
+        }
+        int start = nextInt(emptyCount);
+        int ko = board.getKoPoint();
+        for (int k = 0; k < emptyCount; k++) {
+            int index = start + k;
+            int p = empties[index < emptyCount ? index : index - emptyCount];
+            if (p != ko && !board.isEye(p, color) && !board.isSuicide(p, color)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private void play(int point, int color) {
+        removeEmpty(point);
+        int captured = board.play(point, color);
+        for (int k = 0; k < captured; k++) {
+            int p = board.getCaptured(k);
+            emptyIndex[p] = emptyCount;
+            empties[emptyCount++] = p;
+        }
+        if (ladderReading) {
+            fullBoard.play(point, color);
+        }
+    }
+
+    private void removeEmpty(int point) {
+        int index = emptyIndex[point];
+        int last = empties[--emptyCount];
+        empties[index] = last;
+        emptyIndex[last] = index;
+    }
+
+    //xorshift64*，比java.util.Random快且不需要同步
+    private int nextInt(int bound) {
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        long r = (seed * 0x2545F4914F6CDD1DL) >>> 32;
+        return (int) ((r * bound) >>> 32);
+    }
+
+    /**
+     * 设置长出后只有两口气时是否推演征子，默认不推演
+     * 推演让模拟更接近实战，但每一步都要在BitBoard上同步落子，19路上每秒的模拟次数会降到不推演时的四分之一左右
+     */
+    public void setLadderReading(boolean ladderReading) {
+        if (ladderReading && ladder == null) {
+            ladder = new Ladder(geometry);
+            fullBoard = new BitBoard(geometry);
+        }
+        this.ladderReading = ladderReading;
+    }
+
+    /**
+     * 最近一次模拟终局时某点的归属 -1黑 1白 0无
+     */
+    public int getOwner(int point) {
+        return board.getOwner(point);
+    }
+
+    /**
+     * 最近一次模拟的手数（含虚手）
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+}
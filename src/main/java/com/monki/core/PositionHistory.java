@@ -0,0 +1,88 @@
+package com.monki.core;
+
+import java.util.Arrays;
+
+/**
+ * 对局历史
+ * 只保存每手棋的落子记录和落子后的局面哈希，不再保存整盘棋的副本，
+ * 全局同形（超级劫）检查通过哈希集合一次查找完成
+ */
+public class PositionHistory {
+    private int[] moves = new int[256];//落子记录，编码见encodeMove
+    private long[] hashes = new long[256];//每手棋后的局面哈希
+    private int length;
+    private final LongHashSet seen = new LongHashSet(512);//出现过的所有局面
+
+    public PositionHistory() {
+        seen.add(0L);//空棋盘
+    }
+
+    /**
+     * 记录一手棋
+     * @param point 落子点
+     * @param color 落子方 -1黑 1白
+     * @param hash 落子后的局面哈希
+     */
+    public void record(int point, int color, long hash) {
+        if (length == moves.length) {
+            moves = Arrays.copyOf(moves, length * 2);
+            hashes = Arrays.copyOf(hashes, length * 2);
+        }
+        moves[length] = encodeMove(point, color);
+        hashes[length] = hash;
+        length++;
+        seen.add(hash);
+    }
+
+    /**
+     * 撤销最近一手的记录
+     */
+    public void pop() {
+        length--;
+        if (hashes[length] != 0L) {
+            seen.remove(hashes[length]);
+        }
+    }
+
+    /**
+     * 局面是否出现过
+     */
+    public boolean contains(long hash) {
+        return seen.contains(hash);
+    }
+
+    public int size() {
+        return length;
+    }
+
+    /**
+     * 第n手（从0开始）的落子点
+     */
+    public int getPoint(int n) {
+        return moves[n] >> 1;
+    }
+
+    /**
+     * 第n手（从0开始）的落子方 -1黑 1白
+     */
+    public int getColor(int n) {
+        return (moves[n] & 1) == 0 ? BitBoard.BLACK : BitBoard.WHITE;
+    }
+
+    /**
+     * 第n手（从0开始）后的局面哈希
+     */
+    public long getHash(int n) {
+        return hashes[n];
+    }
+
+    public void clear() {
+        length = 0;
+        seen.clear();
+        seen.add(0L);
+    }
+
+    private static int encodeMove(int point, int color) {
+        return (point << 1) | (color == BitBoard.WHITE ? 1 : 0);
+    }
+}
@@ -1,91 +1,81 @@
 package com.monki.core;
 
-import com.monki.entity.Position;
-import com.monki.entity.Stone;
-
 import java.io.Serializable;
-import java.util.*;
 
+/**
+ * 棋串
+ * 位棋盘用并查集增量维护棋串和气，这里是某个棋串在查询时刻的快照，
+ * 用位掩码表示棋串包含的点和气的位置
+ */
 public class StoneString implements Serializable {
     private static final long serialVersionUID = 3L;
-    //private enum player{white,black};//棋串属于哪一方
-    private int liberty;//气的数量
-    private Set<Stone> stones=new HashSet<>();//当前棋串的棋子
-    private Set<Position> libertyPos=new HashSet<>();//当前气的位置
-    public StoneString(){
-    }
+    private final int color;//棋串属于哪一方 -1黑 1白
+    private final long[] mask;//当前棋串的棋子
+    private final long[] libertyMask;//当前气的位置
+    private final int liberty;//气的数量
 
-    public Set<Stone> getStones() {
-        return stones;
-    }
-    
-    /**
-     * 获取当前棋串的气位置集合
-     * @return 气位置的集合
-     */
-    public Set<Position> getLibertyPos() {
-        return libertyPos;
+    public StoneString(int color, long[] mask, long[] libertyMask, int liberty) {
+        this.color = color;
+        this.mask = mask;
+        this.libertyMask = libertyMask;
+        this.liberty = liberty;
     }
 
-    public void addStones(Set<Stone> stones) {
-
-        this.stones.addAll(stones);
-
-        liberty=getLiberty();
+    public int getColor() {
+        return color;
     }
 
-    public void addStone(Stone stone){
-
-        stones.add(stone);
+    public long[] getMask() {
+        return mask;
+    }
 
-        liberty=getLiberty();
+    public long[] getLibertyMask() {
+        return libertyMask;
     }
 
-    //依赖于棋串的棋子的气，要调用此方法，添加进来的棋子必须要已经添加了气的坐标
     public int getLiberty() {
-        Set<Position> libertyOfString = new HashSet<>();
-        libertyOfString.addAll(libertyPos);
-        Set<Position> fallonIndex = new HashSet<>();
-        for (Stone stone : stones) {
-            Position index = stone.getIndex();
-            index = new Position(index.getJ(),index.getI());
-            fallonIndex.add(index);
-        }
+        return liberty;
+    }
 
-        //更新棋串气的时候检查棋子的气，重新保存棋子状态
-        stones.forEach(stone -> {
-            stone.checkLiberty();
-            Board.stones[stone.getIndex().getJ()][stone.getIndex().getI()] = stone;
-            libertyPos.addAll(stone.getLiberty());
-        });
-        int sizeOFLiberty=libertyPos.size();
-        libertyOfString.retainAll(fallonIndex);
-        //利用集合去重
-        return sizeOFLiberty-libertyOfString.size();
+    public boolean isInAtari() {
+        return liberty == 1;
     }
-    //敌方落子时，移除当前气坐标中对方落子的位置
-    public void updateLiberty(Position index){
-        Position target = new Position(index.getJ(), index.getI());
-        libertyPos.removeIf(libertyPo -> libertyPo.equals(target));
-        this.liberty=getLiberty();//TODO:获取气的时候重置了libertyPos
-        //重置棋盘状态
-        //Board.stones[index.getJ()][index.getI()] = stone;
 
+    public boolean contains(int point) {
+        return BitBoard.testBit(mask, point);
     }
 
-    public String getLibertyString() {
-        String s="";
-        for (Stone stone : stones) {
-            s+=stone.getLiberty();
+    /**
+     * 棋串中棋子的数量
+     */
+    public int size() {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * 棋串中所有棋子的点下标
+     */
+    public int[] getPoints() {
+        int[] points = new int[size()];
+        int n = 0;
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                points[n++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
         }
-        return s;
+        return points;
     }
 
     public String toString() {
         return "串{" +
-                "棋子数=" + stones.size() +
+                "棋子数=" + size() +
                 "气=" + liberty +
-                "气坐标" +getLibertyString() +
                 '}';
     }
 }
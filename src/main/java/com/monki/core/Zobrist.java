@@ -0,0 +1,35 @@
+package com.monki.core;
+
+import java.util.Random;
+
+/**
+ * Zobrist哈希表
+ * 每个点的黑子、白子各对应一个64位随机数，局面哈希为所有棋子随机数的异或，
+ * 落子和提子时只需异或对应的随机数即可增量更新。
+ * 按最大路数的带边框下标生成，所有路数的棋盘共用一张表
+ */
+public class Zobrist {
+    // 固定种子，保证不同进程、不同会话中同一局面的哈希一致
+    private static final long SEED = 0x5EED_F00D_C0FF_EEL;
+
+    private static final int LENGTH = BoardGeometry.of(BoardGeometry.MAX_SIZE).length;
+
+    private static final long[] BLACK_KEYS = new long[LENGTH];
+    private static final long[] WHITE_KEYS = new long[LENGTH];
+
+    static {
+        Random random = new Random(SEED);
+        for (int p = 0; p < LENGTH; p++) {
+            BLACK_KEYS[p] = random.nextLong();
+            WHITE_KEYS[p] = random.nextLong();
+        }
+    }
+
+    /**
+     * 获取某点某方棋子的随机数
+     * @param color -1黑 1白
+     */
+    public static long key(int color, int point) {
+        return color == BitBoard.BLACK ? BLACK_KEYS[point] : WHITE_KEYS[point];
+    }
+}
@@ -3,7 +3,6 @@ package com.monki.draw;
 import com.monki.util.Calculator;
 import com.monki.util.Config;
 import com.monki.entity.Position;
-import com.monki.entity.Stone;
 
 import java.awt.*;
 
@@ -61,21 +60,21 @@ public class MyPaint {
         position = Calculator.getCoordinateViaIndex(16, 16);
         g.fillOval(position.getI()-SPACE/10,position.getJ()-SPACE/10,SPACE/5,SPACE/5);
     }
-    public void drawStone(Graphics2D g, Stone stone) {
+    public void drawStone(Graphics2D g, Color color, Position coordinate) {
         //圆形绘制设置抗锯齿渲染
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         Color[] whiteGradient = {Color.WHITE, Color.LIGHT_GRAY};
         Color[] blackGradient = {Color.LIGHT_GRAY,Color.BLACK};
         //设置渐变画笔
         RadialGradientPaint p = new RadialGradientPaint(
-                stone.getCoordinate().getI()- (float) SPACE /6,stone.getCoordinate().getJ()- (float) SPACE /6 , (float) SPACE /3 ,
+                coordinate.getI()- (float) SPACE /6,coordinate.getJ()- (float) SPACE /6 , (float) SPACE /3 ,
                 new float[]{0.0f, 1.0f},
-                stone.getColor().equals(Color.BLACK)?blackGradient:whiteGradient,
+                color.equals(Color.BLACK)?blackGradient:whiteGradient,
                 RadialGradientPaint.CycleMethod.NO_CYCLE
 
         );
         g.setPaint(p);
-        g.fillOval(stone.getCoordinate().getI()-Config.SPACE/2,stone.getCoordinate().getJ()-Config.SPACE/2,SPACE,SPACE);
+        g.fillOval(coordinate.getI()-Config.SPACE/2,coordinate.getJ()-Config.SPACE/2,SPACE,SPACE);
 
     }
     public void drawLiberty(Graphics g, Position index) {
@@ -1,18 +1,27 @@
 package com.monki.draw;
 
-import com.monki.core.Board;
-import com.monki.core.StoneString;
+import com.monki.core.BitBoard;
+import com.monki.core.BoardSnapshot;
+import com.monki.core.GameState;
+import com.monki.core.Influence;
+import com.monki.core.Patterns;
 import com.monki.socket.StoneClient;
 import com.monki.socket.StoneServer;
 import com.monki.util.FileSaver;
 import com.monki.util.Calculator;
 import com.monki.util.Config;
+import com.monki.entity.MoveRecord;
 import com.monki.entity.Position;
 import com.monki.entity.Stone;
 import com.monki.util.MyLogger;
 import com.monki.socket.GoClient;
 import com.monki.util.KataGoRunner;
+import com.monki.search.AnalysisCache;
+import com.monki.search.MctsEngine;
+import com.monki.search.OwnershipEstimator;
+import com.monki.search.SearchResult;
 import com.monki.util.KataGoEvaluator;
+import com.monki.util.PositionEvaluator;
 
 import javax.imageio.ImageIO;
 import javax.sound.sampled.*;
@@ -21,13 +30,12 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.BasicStroke;
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.FileWriter;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.Map;
-import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MyPanel extends JPanel {
     public static final int X = Config.X;//棋盘左上角顶点x坐标
@@ -37,10 +45,8 @@ public class MyPanel extends JPanel {
     public static final int SPACE = Config.SPACE;
     public static MyPaint myPaint = new MyPaint();
     public static Position mouseOn = null;//鼠标指针距离最近交叉点坐标
-    public static List<Stone> fallOn = new ArrayList<>();//已落子的信息
-    public static int turn = -1;//-1黑 1白
-    public static int count = 1;//对弈手数
-    public static Stone lastStone = null; // 记录最后一颗落子，用于焦点绘制
+    private final GameState game = new GameState();//当前对局：棋盘、落子记录、轮次和手数
+    private final PositionEvaluator evaluator = new PositionEvaluator(game);
     //Logger logger =Logger.getLogger("panel");
     //private Board board= new Board();
     //private static Stone[][] stones=Board.stones;//存放棋盘上落得子
@@ -48,14 +54,34 @@ public class MyPanel extends JPanel {
     private  JButton musicPlayer;
     private JButton saveSGF;
     private JButton situationJudgment; // 新增形势判断按钮
+    private JButton undo; // 悔棋按钮
+    private JButton redo; // 恢复悔掉的棋
     private JPanel textPanel;
-    private static JTextArea text;
+    private JTextArea text;
     private Clip clip;
     private JFrame myFrame;
     private boolean showSituation = false; // 控制是否显示形势判断
     private KataGoRunner kataGoRunner;
-    private String lastSgfPath;
-    private File tempDir;
+    private final int[] suggestions = new int[3];//按3x3图案挑出的快速提示点
+    private int suggestionCount;
+    private long suggestionKey = 1;//计算提示时的棋盘哈希和轮次，变化后才重新计算
+    private BitBoard paintBoard;//按快照重建的棋盘，绘制影响力图和提示时使用
+    private Influence influence;//形势判断还没有当前局面的结果时显示的影响力图，第一次用到时创建
+    private long influenceKey = 1;//计算影响力图时的棋盘哈希
+    private MctsEngine mctsEngine;//KataGo不可用时使用的内置搜索引擎，第一次用到时创建
+    private OwnershipEstimator ownershipEstimator;//落子后刷新形势判断用的领地估计，第一次用到时创建
+    private static final int OWNERSHIP_PLAYOUTS = 10000;//每次领地估计的模拟次数
+    private static final int ANALYSIS_INTERVAL = 10;//KataGo持续分析的输出间隔，单位为百分之一秒
+    private final AtomicReference<SearchResult> pendingAnalysis = new AtomicReference<>();//还没交给界面线程的最新分析结果
+    private long solvingHash;//正在后台做死活搜索的局面，只在界面线程读写
+    private boolean solving = false;
+    private static final double KOMI = 7.5;//KataGo配置中的贴目，缓存的键之一
+    private static final String RULES = "chinese";//KataGo配置中的规则，缓存的键之一
+    private static final int ENOUGH_VISITS = 2000;//缓存的结果达到这个访问次数时不再让KataGo重新分析
+    private static final int CACHE_ENTRIES = 4096;//分析缓存最多保存的局面数
+    // KataGo的分析结果按对称规范化的局面缓存，退出时保存，下次启动读回
+    private final AnalysisCache analysisCache = new AnalysisCache(CACHE_ENTRIES,
+            new File(System.getProperty("user.home"), ".monki/analysis-cache.bin"));
 
     public MyPanel(JFrame frame) {
         myFrame = frame;
@@ -63,11 +89,8 @@ public class MyPanel extends JPanel {
         initPanel();
         initListener();
         
-        // 创建临时目录
-        tempDir = new File(System.getProperty("user.home"), "fantasy_go_temp");
-        if (!tempDir.exists()) {
-            tempDir.mkdirs();
-        }
+        analysisCache.load();
+        Runtime.getRuntime().addShutdownHook(new Thread(analysisCache::save, "analysis-cache-save"));
         
         // 初始化KataGo运行器
         kataGoRunner = new KataGoRunner();
@@ -77,9 +100,9 @@ public class MyPanel extends JPanel {
             e.printStackTrace();
             System.err.println("KataGo启动失败：" + e.getMessage());
             JOptionPane.showMessageDialog(this, 
-                "KataGo启动失败：" + e.getMessage(), 
-                "错误", 
-                JOptionPane.ERROR_MESSAGE);
+                "KataGo启动失败：" + e.getMessage() + "\n形势判断将使用内置搜索引擎", 
+                "提示", 
+                JOptionPane.WARNING_MESSAGE);
         }
     }
 
@@ -88,12 +111,11 @@ public class MyPanel extends JPanel {
         if (kataGoRunner != null) {
             kataGoRunner.stopKataGo();
         }
-        // 清理临时文件
-        if (tempDir != null && tempDir.exists()) {
-            for (File file : tempDir.listFiles()) {
-                file.delete();
-            }
-            tempDir.delete();
+        if (mctsEngine != null) {
+            mctsEngine.shutdown();
+        }
+        if (ownershipEstimator != null) {
+            ownershipEstimator.shutdown();
         }
     }
 
@@ -115,21 +137,25 @@ public class MyPanel extends JPanel {
         
         // 如果启用了形势判断，则绘制形势
         if (showSituation) {
-            // 绘制领地和死子标记
-            for (int i = 1; i <= Config.PATH; i++) {
-                for (int j = 1; j <= Config.PATH; j++) {
-                    Position position = Calculator.getCoordinateViaIndex(j, i);
-                    Color territoryColor = com.monki.util.PositionEvaluator.getTerritoryColor(i, j);
-                    if (territoryColor != null) {
-                        g.setColor(territoryColor);
-                        g.fillRect(position.getI() - Config.SPACE/4, position.getJ() - Config.SPACE/4, 
-                                  Config.SPACE/2, Config.SPACE/2);
+            // 绘制领地和死子标记，落子后还没有重新判断时先显示影响力图
+            if (evaluator.isCurrent()) {
+                for (int i = 1; i <= Config.PATH; i++) {
+                    for (int j = 1; j <= Config.PATH; j++) {
+                        Position position = Calculator.getCoordinateViaIndex(j, i);
+                        Color territoryColor = evaluator.getTerritoryColor(i, j);
+                        if (territoryColor != null) {
+                            g.setColor(territoryColor);
+                            g.fillRect(position.getI() - Config.SPACE/4, position.getJ() - Config.SPACE/4, 
+                                      Config.SPACE/2, Config.SPACE/2);
+                        }
                     }
                 }
+            } else {
+                drawInfluence(g);
             }
             
             // 绘制最佳落子点
-            Position bestMove = com.monki.util.PositionEvaluator.getBestMove();
+            Position bestMove = evaluator.getBestMove();
             if (bestMove != null) {
                 Position bestMoveCoord = Calculator.getCoordinateViaIndex(bestMove.getI(), bestMove.getJ());
                 g.setColor(new Color(0, 255, 0, 180)); // 半透明绿色
@@ -143,6 +169,8 @@ public class MyPanel extends JPanel {
                 // 恢复默认线型
                 g.setStroke(oldStroke);
             }
+            
+            drawQuickSuggestions(g);
         }
         
         //实现落子提示效果
@@ -150,22 +178,23 @@ public class MyPanel extends JPanel {
             g.setColor(Color.RED);
             g.fillRect(mouseOn.getI() - Config.SPACE / 4, mouseOn.getJ() - Config.SPACE / 4, SPACE/2, SPACE/2);
         }
-        //落子实现
+        //落子实现，读取对局发布的快照，网络线程同时落子也不影响绘制
+        BoardSnapshot snapshot = game.getSnapshot();
+        List<MoveRecord> fallOn = snapshot.getStones();
+        MoveRecord lastStone = snapshot.getLastMove();
         if (!fallOn.isEmpty()) {
             //g.setColor(Color.BLACK);
             //Boolean isBlack = true;
-            for (Stone stone : fallOn) {
-                if (!stone.getRemoved()) {
-                    myPaint.drawStone(g, stone);
-                    
-                    // 修改落子焦点绘制逻辑，解决网络模式下的焦点显示问题
-                    // 焦点显示在最后一颗棋子上，无论是本地落下的还是从网络接收的
-                    if (lastStone != null && stone.getCount() == lastStone.getCount()) {
-                        int i = stone.getCoordinate().getI();
-                        int j = stone.getCoordinate().getJ();
-                        g.setColor(stone.getColor().equals(Color.WHITE) ? Color.BLACK : Color.WHITE);
-                        g.fillPolygon(new int[]{i, i, i+Config.SPACE/2}, new int[]{j, j+Config.SPACE/2, j}, 3);
-                    }
+            for (MoveRecord stone : fallOn) {
+                myPaint.drawStone(g, stone.getColor(), stone.getCoordinate());
+
+                // 修改落子焦点绘制逻辑，解决网络模式下的焦点显示问题
+                // 焦点显示在最后一颗棋子上，无论是本地落下的还是从网络接收的
+                if (lastStone != null && stone.getCount() == lastStone.getCount()) {
+                    int i = stone.getCoordinate().getI();
+                    int j = stone.getCoordinate().getJ();
+                    g.setColor(stone.getColor().equals(Color.WHITE) ? Color.BLACK : Color.WHITE);
+                    g.fillPolygon(new int[]{i, i, i+Config.SPACE/2}, new int[]{j, j+Config.SPACE/2, j}, 3);
                 }
             }
         }
@@ -178,7 +207,7 @@ public class MyPanel extends JPanel {
             if (Calculator.isInBoard(e.getX(), e.getY())) {
                 Position index = Calculator.getIndexViaMouse(e.getX(), e.getY());
                 Position coordinate = Calculator.getCoordinateViaIndex(index.getI(), index.getJ());
-                Stone stone = new Stone(count, turn == -1 ? Color.BLACK : Color.WHITE, coordinate, index);
+                Stone stone = new Stone(game.getCount(), game.getTurn() == -1 ? Color.BLACK : Color.WHITE, coordinate, index);
                 
                 //本地对弈模式
                 if(Config.MODE == 0){
@@ -207,7 +236,7 @@ public class MyPanel extends JPanel {
                     }
                 }
 
-                MyLogger.log("count" + count, this.getClass());
+                MyLogger.log("count" + game.getCount(), this.getClass());
 
                 //重绘当前落下棋子区域
                 repaint(coordinate.getI() - Config.SPACE / 2, coordinate.getJ() - Config.SPACE / 2, SPACE * 2, SPACE * 2);
@@ -219,145 +248,50 @@ public class MyPanel extends JPanel {
         }
     }
 
-    public static void updateStone(Stone stone) {
+    public void updateStone(Stone stone) {
         try {
             Position index = stone.getIndex();
-            boolean debug = false; // 控制详细日志输出
             
             // 快速验证石头有效性
-            if (index.getI() < 0 || index.getI() > Config.PATH || 
-                index.getJ() < 0 || index.getJ() > Config.PATH) {
+            if (!game.isOnBoard(index.getJ(), index.getI())) {
                 System.out.println("无效的棋子位置: " + index.getI() + "," + index.getJ());
                 return;
             }
             
-            // 设置当前回合 - 根据棋子颜色设置
-            int stoneTurn = stone.getColor().equals(Color.BLACK) ? -1 : 1;
+            // 落子、处理提子、记录历史并更新回合和手数
+            game.play(stone);
+            refreshOwnership();
             
-            // 1. 更新棋盘状态 - 优先处理核心逻辑
-            Board.stones[index.getJ()][index.getI()] = stone;
-            Board.state[index.getJ()][index.getI()] = stoneTurn;
-            
-            // 2. 更新气相关信息 - 对石头检查气
-            stone.checkLiberty();
-            
-            // 3. 更新敌方棋串的气坐标 - 批量处理
-            List<StoneString> opponentStrings = (stoneTurn == -1) ? Board.whiteString : Board.blackString;
-            for (StoneString stoneString : opponentStrings) {
-                stoneString.updateLiberty(index);
-            }
-            
-            // 4. 处理提子
-            removeOppositeDeathString(index, stoneTurn);
-            
-            // 5. 再次更新当前棋子气数
-            stone.checkLiberty();
-            
-            // 6. 连接棋串和更新历史
-            Board.connectString(stone, stoneTurn);
-            Board.history.add(Calculator.deepCopy(Board.state));
-            
-            // 7. 更新UI文本
+            // 更新UI文本
             if(text != null) {
-                text.setText("请"+(stoneTurn==-1?"白":"黑")+"方落子 当前手数："+(stone.getCount()+1));
-            }
-            
-            // 8. 更新回合和手数
-            if (Config.MODE == 0) {
-                // 本地模式下切换回合并增加手数
-                turn = -turn;
-                count++;
-            } else {
-                // 网络模式下根据当前棋子更新
-                turn = -stoneTurn;
-                count = stone.getCount() + 1;
-            }
-            
-            // 9. 添加到落子历史
-            if (fallOn.size() < stone.getCount()) {
-                // 填充缺失的石头
-                while (fallOn.size() < stone.getCount() - 1) {
-                    fallOn.add(null);
-                }
-                fallOn.add(stone);
-            } else if (fallOn.size() >= stone.getCount()) {
-                // 更新现有石头
-                while (fallOn.size() <= stone.getCount() - 1) {
-                    fallOn.add(null);
-                }
-                fallOn.set(stone.getCount() - 1, stone);
+                text.setText("请"+(game.getTurn()==-1?"黑":"白")+"方落子 当前手数："+game.getCount());
             }
             
-            // 10. 更新最后一颗落子引用，用于焦点绘制
-            lastStone = stone;
-            
         } catch (Exception e) {
             System.out.println("棋盘更新出错: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    /**
-     * 处理落子后可能产生的提子操作
-     * 
-     * @param index 当前落子的位置
-     * @param player 当前落子的玩家（-1表示黑，1表示白）
-     */
-    private static void removeOppositeDeathString(Position index, int player) {
-        // 获取落子后气为0的对方棋串列表
-        List<StoneString> deadStrings = Board.getStonesToRemove(index, player);
-        
-        if (!deadStrings.isEmpty()) {
-            // 遍历每个应该被提子的棋串
-            for (StoneString deadString : deadStrings) {
-                Set<Stone> stones = deadString.getStones();
-                
-                // 处理棋串中的每个棋子
-                for (Stone stone : stones) {
-                    // 标记棋子为已提走
-                    stone.setRemoved(true);
-                    
-                    // 更新UI记录中的棋子状态
-                    fallOn.set(stone.getCount() - 1, stone);
-                    System.out.println(stone);
-                    
-                    // 清除棋盘数据结构中的记录
-                    Board.state[stone.getIndex().getJ()][stone.getIndex().getI()] = 0;
-                    Board.stones[stone.getIndex().getJ()][stone.getIndex().getI()] = null;
-                }
-                
-                // 从棋盘的棋串集合中移除该死亡棋串
-                if (player == -1) {
-                    Board.whiteString.remove(deadString); // 黑方落子，移除白方棋串
-                } else if (player == 1) {
-                    Board.blackString.remove(deadString); // 白方落子，移除黑方棋串
-                }
-            }
-        }
+    public GameState getGameState() {
+        return game;
     }
 
     private void showFallon() {
         StringBuilder msg = new StringBuilder();
-        for (Stone stone1 : fallOn) {
+        for (Stone stone1 : game.getFallOn()) {
             msg.append(stone1);
         }
         MyLogger.log(msg.toString(), this.getClass());
     }
 
     private void showBoardState() {
-        MyLogger.log("Board.state[][]", this.getClass());
-        StringBuilder boardState = new StringBuilder();
-        for (int i = 1; i <= 19; i++) {
-            for (int j = 1; j <= 19; j++) {
-                boardState.append(Board.state[i][j]).append(" ");
-                //System.out.println(Board.stones[i][j]);
-            }
-            boardState.append("\n");
-        }
-        MyLogger.log(boardState.toString(), this.getClass());
+        MyLogger.log("game.board", this.getClass());
+        MyLogger.log(game.toString(), this.getClass());
     }
 
     private boolean isValidStone(Position index, Stone stone) {
+        int turn = game.getTurn();
         System.out.println("\n===== 验证落子 =====");
         System.out.println("落子位置: (" + index.getI() + "," + index.getJ() + ")");
         System.out.println("落子颜色: " + (stone.getColor().equals(Color.BLACK) ? "黑" : "白"));
@@ -379,7 +313,7 @@ public class MyPanel extends JPanel {
         }
         
         // 当前坐标已落子
-        if (Board.state[index.getJ()][index.getI()] != 0) {
+        if (game.getState(index.getJ(), index.getI()) != 0) {
             MyLogger.log("当前坐标已落子，请到别处落子", this.getClass());
             System.out.println("验证失败 - 位置已有棋子");
             new WarningDialog("当前坐标已落子，请到别处落子");
@@ -395,7 +329,7 @@ public class MyPanel extends JPanel {
         }
         
         // 判断是否全局同形
-        if (isAppeared(index)) {
+        if (isAppeared(index, turn)) {
             MyLogger.log("违反了禁全局同形规则，请在别处落子", this.getClass());
             System.out.println("验证失败 - 全局同形规则");
             new WarningDialog("违反了禁全局同形规则，\n请到别处落子");
@@ -409,112 +343,13 @@ public class MyPanel extends JPanel {
         return true;
     }
 
-    private boolean isAppeared(Position index) {
-        int[][] clone = Calculator.deepCopy(Board.state);
-        int i = index.getJ();
-        int j = index.getI();
-        
-        //真实棋盘落子（后面恢复）
-        Board.state[i][j] = turn;
-        //模拟棋盘落子
-        clone[i][j] = turn;
-        
-        //落子后更新敌方棋串的气坐标
-        if (turn == -1) {
-            for (StoneString stoneString : Board.whiteString) {
-                stoneString.updateLiberty(index);
-            }
-        } else if (turn == 1) {
-            for (StoneString stoneString : Board.blackString) {
-                stoneString.updateLiberty(index);
-            }
-        }
-        
-        //落子后模拟提子
-        List<StoneString> stoneStrings = Board.getStonesToRemove(index, turn);
-        if (!stoneStrings.isEmpty()) {
-            //找到被提的棋串，设置模拟棋盘中被提掉的棋子
-            stoneStrings.forEach(stoneString -> {
-                Set<Stone> stones = stoneString.getStones();
-                stones.forEach(s -> {
-                    clone[s.getIndex().getJ()][s.getIndex().getI()] = 0;
-                });
-            });
-        }
-        
-        //恢复真实棋盘状态
-        Board.state[i][j] = 0;
-        
-        //检查是否违反全局同形
-        for (int[][] ints : Board.history) {
-            if(Calculator.areArraysEqual(clone, ints)){
-                return true;
-            }
-        }
-        return false;
+    private boolean isAppeared(Position index, int player) {
+        return game.isRepeated(index.getJ(), index.getI(), player);
     }
 
-    //修改自杀逻辑，先判断是否能提子，如果能则不算自杀，判断落子后当前棋串的气是否为0，为0则算自杀
+    //先判断是否能提子，如果能则不算自杀，否则判断落子后当前棋串的气是否为0，为0则算自杀
     private boolean isSuicide(Position index, int player, Stone stone) {
-        int[][] clone = Calculator.deepCopy(Board.state);
-        int i = index.getJ();
-        int j = index.getI();
-        Position up = new Position(i-1, j);
-        Position down = new Position(i+1, j);
-        Position left = new Position(i, j-1);
-        Position right = new Position(i, j+1);
-        
-        //真实棋盘落子（后面恢复）
-        Board.state[i][j] = turn;
-        
-        //落子后更新敌方棋串的气坐标
-        if (turn == -1) {
-            for (StoneString stoneString : Board.whiteString) {
-                stoneString.updateLiberty(index);
-            }
-        } else if (turn == 1) {
-            for (StoneString stoneString : Board.blackString) {
-                stoneString.updateLiberty(index);
-            }
-        }
-        
-        //落子后模拟提子
-        List<StoneString> stoneStrings = Board.getStonesToRemove(index, turn);
-        
-        //恢复棋盘状态
-        Board.state[i][j] = 0;
-        
-        if (!stoneStrings.isEmpty()) {
-            //能提子，不算自杀
-            return false;
-        } else {
-            //连接棋串，判断上下左右是否有当前方棋串
-            StoneString mergedString = new StoneString();
-            if(Board.existStone(up, player)){
-                StoneString u = Board.getStoneStringByIndex(up);
-                mergedString.addStone(stone);
-                mergedString.addStones(u.getStones());
-            }
-            if (Board.existStone(down, player)) {
-                StoneString d = Board.getStoneStringByIndex(down);
-                mergedString.addStone(stone);
-                mergedString.addStones(d.getStones());
-            }
-            if (Board.existStone(left, player)) {
-                StoneString l = Board.getStoneStringByIndex(left);
-                mergedString.addStone(stone);
-                mergedString.addStones(l.getStones());
-            }
-            if (Board.existStone(right, player)) {
-                StoneString r = Board.getStoneStringByIndex(right);
-                mergedString.addStone(stone);
-                mergedString.addStones(r.getStones());
-            }
-            mergedString.addStone(stone);
-            
-            // 如果气数为0，则为自杀
-            return mergedString.getLiberty() == 0;
-        }
+        return game.isSuicide(index.getJ(), index.getI(), player);
     }
 
     private void initPanel() {
@@ -553,12 +388,20 @@ public class MyPanel extends JPanel {
         situationJudgment = new MyButton("形势判断");
         situationJudgment.setBounds(rightEdgePosition + SPACE*6, Y+SPACE*2, SPACE * 5, (int)(SPACE*1.2));
         
+        // 设置悔棋、前进按钮位置（文本面板下方）
+        undo = new MyButton("悔棋");
+        undo.setBounds(rightEdgePosition, Y+SPACE*17, SPACE * 5, (int)(SPACE*1.2));
+        redo = new MyButton("前进");
+        redo.setBounds(rightEdgePosition + SPACE*6, Y+SPACE*17, SPACE * 5, (int)(SPACE*1.2));
+        
         // 添加组件
         setDoubleBuffered(true);
         add(menu);
         add(musicPlayer);
         add(saveSGF);
         add(situationJudgment); // 添加形势判断按钮
+        add(undo);
+        add(redo);
         textPanel.add(text);
         add(textPanel);
         setVisible(true);
@@ -640,8 +483,9 @@ public class MyPanel extends JPanel {
         saveSGF.addActionListener(new ActionListener(){
             @Override
             public void actionPerformed(ActionEvent e) {
+                List<Stone> fallOn = game.getFallOn();
                 StringBuilder sb = new StringBuilder();
-                sb.append("(;GM[1]FF[4]CA[UTF-8]SZ[19];\n");
+                sb.append("(;GM[1]FF[4]CA[UTF-8]SZ[" + game.getSize() + "];\n");
                 for (Stone stone : fallOn) {
                     if (stone.getColor().equals(Color.BLACK)) {
                         sb.append("B[");
@@ -669,6 +513,36 @@ public class MyPanel extends JPanel {
             }
         });
         
+        // 悔棋和前进只在单机对弈中可用，按悔棋日志撤销或恢复一手
+        undo.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (Config.MODE != 0) {
+                    new WarningDialog("联机对战不能悔棋");
+                    return;
+                }
+                if (game.undo()) {
+                    text.setText("请" + (game.getTurn() == -1 ? "黑" : "白") + "方落子 当前手数：" + game.getCount());
+                    refreshOwnership();
+                    repaint();
+                }
+            }
+        });
+        redo.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (Config.MODE != 0) {
+                    new WarningDialog("联机对战不能悔棋");
+                    return;
+                }
+                if (game.redo()) {
+                    text.setText("请" + (game.getTurn() == -1 ? "黑" : "白") + "方落子 当前手数：" + game.getCount());
+                    refreshOwnership();
+                    repaint();
+                }
+            }
+        });
+        
         // 添加形势判断按钮的事件监听器
         situationJudgment.addActionListener(new ActionListener() {
             @Override
@@ -677,41 +551,33 @@ public class MyPanel extends JPanel {
                 showSituation = !showSituation;
                 
                 if (showSituation) {
-                    // 使用KataGo分析当前局面
-                    analyzeWithKataGo();
-                    
-                    // 获取形势评估结果
-                    Map<String, Object> result = com.monki.util.PositionEvaluator.evaluatePosition();
-                    
-                    // 显示评估结果
-                    double scoreDiff = (double) result.get("scoreDiff");
-                    int blackTerritory = (int) result.get("blackTerritory");
-                    int whiteTerritory = (int) result.get("whiteTerritory");
-                    int blackCaptures = (int) result.get("blackCaptures");
-                    int whiteCaptures = (int) result.get("whiteCaptures");
-                    double whiteWinrate = (double) result.get("whiteWinrate");
-                    double whiteLead = (double) result.get("whiteLead");
+                    // 使用KataGo分析当前局面，全盘已定型时死活已确定，不必调用引擎
+                    if (!evaluator.isSettled()) {
+                        analyzeWithKataGo();
+                    }
                     
-                    // 更新文本显示
-                    text.setText(String.format(
-                        "KataGo评估：\n" +
-                        "胜率：白%.1f%% 黑%.1f%%\n" +
-                        "目差：%.1f目\n\n" +
-                        "黑方领地：%d 目\n白方领地：%d 目\n" +
-                        "黑方提子：%d 子\n白方提子：%d 子\n" +
-                        "得分差：%.2f 目\n%s",
-                        whiteWinrate * 100, (1 - whiteWinrate) * 100,
-                        whiteLead,
-                        blackTerritory, whiteTerritory, 
-                        blackCaptures, whiteCaptures, 
-                        scoreDiff,
-                        scoreDiff > 0 ? "黑方领先" : "白方领先"
-                    ));
+                    showEvaluation();
                     
                     situationJudgment.setText("关闭形势判断");
+                    
+                    // 引擎结果之后继续在后台细化
+                    if (!evaluator.isSettled()) {
+                        refreshOwnership();
+                    }
                 } else {
+                    // 关闭形势判断时停止后台分析
+                    if (kataGoRunner != null && kataGoRunner.isRunning()) {
+                        kataGoRunner.stopAnalysis();
+                    }
+                    if (ownershipEstimator != null) {
+                        ownershipEstimator.stop();
+                    }
+                    if (mctsEngine != null) {
+                        mctsEngine.stop();
+                    }
+                    
                     // 恢复原始显示
-                    text.setText("请" + (turn == -1 ? "黑" : "白") + "方落子 当前手数：" + count);
+                    text.setText("请" + (game.getTurn() == -1 ? "黑" : "白") + "方落子 当前手数：" + game.getCount());
                     situationJudgment.setText("形势判断");
                 }
                 
@@ -721,35 +587,184 @@ public class MyPanel extends JPanel {
         });
     }
     
+    /**
+     * 显示形势判断时，在后台重新估计当前局面的领地，完成后刷新领地显示
+     * KataGo可用时用kata-analyze持续分析，结果随搜索加深不断刷新；否则用随机模拟估计。
+     * 估计期间先显示影响力图；局面又变化时旧的估计提前结束，结果丢弃
+     */
+    private void refreshOwnership() {
+        if (!showSituation) {
+            return;
+        }
+        if (kataGoRunner != null && kataGoRunner.isRunning()) {
+            streamAnalysis();
+            return;
+        }
+        if (ownershipEstimator == null) {
+            ownershipEstimator = new OwnershipEstimator();
+        }
+        final BoardSnapshot snapshot = game.getSnapshot();
+        new SwingWorker<SearchResult, Void>() {
+            @Override
+            protected SearchResult doInBackground() {
+                return ownershipEstimator.estimate(snapshot.toBitBoard(), snapshot.getTurn(), OWNERSHIP_PLAYOUTS);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    SearchResult result = get();
+                    if (game.getSnapshot().getHash() != snapshot.getHash() || result.getVisits() < OWNERSHIP_PLAYOUTS) {
+                        return;
+                    }
+                    result.applyTo(evaluator);
+                    evaluator.evaluatePosition();
+                    solveInBackground(evaluator::evaluatePosition);
+                    repaint();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 在后台对当前局面被围的棋串做死活搜索，每块棋最多耗时数百毫秒，不能在界面线程进行
+     * 同一局面只求解一次；求解完成且局面未变时用refresh重新判断形势并刷新显示
+     */
+    private void solveInBackground(Runnable refresh) {
+        final BoardSnapshot snapshot = game.getSnapshot();
+        final long hash = snapshot.getHash();
+        if (evaluator.isSolved() || (solving && solvingHash == hash)) {
+            return;
+        }
+        solving = true;
+        solvingHash = hash;
+        new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() {
+                return evaluator.solveEnclosedStrings(snapshot);
+            }
+
+            @Override
+            protected void done() {
+                if (solvingHash == hash) {
+                    solving = false;
+                }
+                try {
+                    if (get() && showSituation && game.getSnapshot().getHash() == hash) {
+                        refresh.run();
+                        repaint();
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 用KataGo持续分析当前局面，每次得到更深的结果就更新形势判断
+     * 分析结果在后台线程到达，只保留最新的一个交给界面线程，界面来不及处理时跳过中间的结果
+     */
+    private void streamAnalysis() {
+        final BoardSnapshot snapshot = game.getSnapshot();
+        kataGoRunner.stopAnalysis();
+        pendingAnalysis.set(null);
+        // 分析过的局面先显示缓存的结果，已经够深时不再启动引擎
+        SearchResult cached = analysisCache.get(snapshot, KOMI, RULES);
+        if (cached != null) {
+            cached.applyTo(evaluator);
+            evaluator.evaluatePosition();
+            solveInBackground(evaluator::evaluatePosition);
+            repaint();
+            if (cached.getVisits() >= ENOUGH_VISITS) {
+                return;
+            }
+        }
+        kataGoRunner.startAnalysis(snapshot, ANALYSIS_INTERVAL, result -> {
+            analysisCache.put(snapshot, KOMI, RULES, result);
+            if (game.getSnapshot().getHash() != snapshot.getHash()) {
+                return;
+            }
+            if (pendingAnalysis.getAndSet(result) == null) {
+                SwingUtilities.invokeLater(() -> {
+                    SearchResult latest = pendingAnalysis.getAndSet(null);
+                    if (latest == null || !showSituation || game.getSnapshot().getHash() != snapshot.getHash()) {
+                        return;
+                    }
+                    latest.applyTo(evaluator);
+                    evaluator.evaluatePosition();
+                    solveInBackground(evaluator::evaluatePosition);
+                    repaint();
+                });
+            }
+        });
+    }
+
+    /**
+     * 绘制Bouzy影响力图，不需要引擎的即时形势估计，棋盘不变时直接用上次的结果
+     */
+    private void drawInfluence(Graphics2D g) {
+        BitBoard board = paintBoard(game.getSnapshot());
+        if (influence == null) {
+            influence = new Influence(board.getGeometry());
+        }
+        if (board.getHash() != influenceKey) {
+            influence.compute(board);
+            influenceKey = board.getHash();
+        }
+        for (int p : board.getGeometry().points()) {
+            int value = influence.get(p);
+            if (board.get(p) != BitBoard.EMPTY || value == 0) {
+                continue;
+            }
+            // 黑方半透明黑色，白方半透明蓝色，与领地的颜色一致
+            int alpha = Math.min(160, 40 + Math.abs(value) * 4);
+            g.setColor(value < 0 ? new Color(0, 0, 0, alpha) : new Color(30, 144, 255, alpha));
+            Position coordinate = Calculator.getCoordinateViaIndex(board.colOf(p), board.rowOf(p));
+            g.fillRect(coordinate.getI() - Config.SPACE/4, coordinate.getJ() - Config.SPACE/4,
+                    Config.SPACE/2, Config.SPACE/2);
+        }
+    }
+
+    /**
+     * 绘制快速提示：按3x3图案权重挑出的几个点，棋盘不变时直接用上次的结果
+     */
+    private void drawQuickSuggestions(Graphics2D g) {
+        BoardSnapshot snapshot = game.getSnapshot();
+        BitBoard board = paintBoard(snapshot);
+        long key = snapshot.getHash() ^ snapshot.getTurn();
+        if (key != suggestionKey) {
+            // 快照不含对局历史，提示只检查劫，不检查全局同形
+            suggestionCount = Patterns.suggest(board, snapshot.getTurn(), null, suggestions);
+            suggestionKey = key;
+        }
+        g.setColor(new Color(255, 165, 0, 200)); // 橙色
+        g.setStroke(new BasicStroke(2.0f));
+        for (int k = 0; k < suggestionCount; k++) {
+            int point = suggestions[k];
+            Position coordinate = Calculator.getCoordinateViaIndex(board.colOf(point), board.rowOf(point));
+            g.drawRect(coordinate.getI() - Config.SPACE/5, coordinate.getJ() - Config.SPACE/5,
+                    2*Config.SPACE/5, 2*Config.SPACE/5);
+        }
+    }
+
+    //绘制用的棋盘，快照变化时才重建
+    private BitBoard paintBoard(BoardSnapshot snapshot) {
+        if (paintBoard == null || paintBoard.getHash() != snapshot.getHash()) {
+            paintBoard = snapshot.toBitBoard();
+        }
+        return paintBoard;
+    }
+
     /**
      * 清空棋盘状态
      * 重置所有与棋局相关的变量和集合
      */
     private void clearBoardState() {
-        // 清空已落子信息
-        fallOn.clear();
-        
-        // 重置轮次和手数
-        turn = -1; // 重置为黑方先行
-        count = 1; // 重置手数
-        
-        // 重置最后落子引用
-        lastStone = null;
-        
-        // 清空棋盘状态
-        for (int i = 0; i <= Config.PATH; i++) {
-            for (int j = 0; j <= Config.PATH; j++) {
-                Board.state[i][j] = 0;
-                Board.stones[i][j] = null;
-            }
-        }
-        
-        // 清空棋串
-        Board.blackString.clear();
-        Board.whiteString.clear();
-        
-        // 清空历史记录
-        Board.history.clear();
+        // 清空棋盘、历史、落子记录，重置为黑方先行
+        game.clear();
         
         // 重置鼠标位置
         mouseOn = null;
@@ -764,51 +779,108 @@ public class MyPanel extends JPanel {
         repaint();
     }
 
-    private void analyzeWithKataGo() {
-        try {
-            // 生成临时SGF文件
-            StringBuilder sb = new StringBuilder();
-            sb.append("(;GM[1]FF[4]CA[UTF-8]SZ[19];\n");
-            for (Stone stone : fallOn) {
-                if (!stone.getRemoved()) {  // 只保存未被提走的棋子
-                    if (stone.getColor().equals(Color.BLACK)) {
-                        sb.append("B[");
-                        sb.append(Calculator.getAlphaIndex(stone.getIndex()));
-                        sb.append("]");
-                    } else if (stone.getColor().equals(Color.WHITE)) {
-                        sb.append("W[");
-                        sb.append(Calculator.getAlphaIndex(stone.getIndex()));
-                        sb.append("]");
-                    }
-                    if(stone.getCount() != fallOn.size()) {
-                        sb.append(";");
-                    }
-                }
-            }
-            sb.append(")");
+    /**
+     * 按当前的引擎结果判断形势，把胜率、目差、领地和得分显示在文本区
+     */
+    private void showEvaluation() {
+        // 获取形势评估结果
+        Map<String, Object> result = evaluator.evaluatePosition();
+        solveInBackground(this::showEvaluation);
 
-            // 保存SGF文件
-            lastSgfPath = new File(tempDir, "temp_analysis.sgf").getAbsolutePath();
-            try (FileWriter writer = new FileWriter(lastSgfPath)) {
-                writer.write(sb.toString());
-            }
+        // 显示评估结果
+        double scoreDiff = (double) result.get("scoreDiff");
+        double territoryDiff = (double) result.get("territoryDiff");
+        int blackTerritory = (int) result.get("blackTerritory");
+        int whiteTerritory = (int) result.get("whiteTerritory");
+        int blackCaptures = (int) result.get("blackCaptures");
+        int whiteCaptures = (int) result.get("whiteCaptures");
+        int blackArea = (int) result.get("blackArea");
+        int whiteArea = (int) result.get("whiteArea");
+        double whiteWinrate = (double) result.get("whiteWinrate");
+        double whiteLead = (double) result.get("whiteLead");
+
+        // 更新文本显示
+        text.setText(String.format(
+            "KataGo评估：\n" +
+            "胜率：白%.1f%% 黑%.1f%%\n" +
+            "目差：%.1f目\n\n" +
+            "黑方领地：%d 目\n白方领地：%d 目\n" +
+            "黑方提子：%d 子\n白方提子：%d 子\n" +
+            "黑方数子：%d 子\n白方数子：%d 子\n" +
+            "得分差：%.2f 目\n数目法得分差：%.2f 目\n%s",
+            whiteWinrate * 100, (1 - whiteWinrate) * 100,
+            whiteLead,
+            blackTerritory, whiteTerritory, 
+            blackCaptures, whiteCaptures, 
+            blackArea, whiteArea,
+            scoreDiff, territoryDiff,
+            scoreDiff > 0 ? "黑方领先" : "白方领先"
+        ));
+    }
 
-            // 使用KataGo分析
-            String analysis = kataGoRunner.analyzeSgf(lastSgfPath);
-            if (analysis != null) {
+    private void analyzeWithKataGo() {
+        if (kataGoRunner == null || !kataGoRunner.isRunning()) {
+            analyzeWithMcts();
+            return;
+        }
+        BoardSnapshot snapshot = game.getSnapshot();
+        // 与持续分析相同，缓存的结果够深才不再分析，kata-raw-nn这类0访问的结果只当作临时显示
+        SearchResult cached = analysisCache.get(snapshot, KOMI, RULES);
+        if (cached != null) {
+            cached.applyTo(evaluator);
+            if (cached.getVisits() >= ENOUGH_VISITS) {
+                return;
+            }
+        }
+        try {
+            // 引擎棋盘只同步上次分析之后变化的落子，不写临时文件
+            String analysis = kataGoRunner.analyze(snapshot);
+            SearchResult result = KataGoEvaluator.parseRawOutput(analysis, snapshot.getSize());
+            if (result != null) {
                 // 处理分析结果
-                KataGoEvaluator.processKataGoOutput(analysis);
+                analysisCache.put(snapshot, KOMI, RULES, result);
+                result.applyTo(evaluator);
             } else {
                 throw new Exception("KataGo返回空结果");
             }
 
         } catch (Exception e) {
             e.printStackTrace();
-            System.err.println("KataGo分析失败：" + e.getMessage());
-            JOptionPane.showMessageDialog(this, 
-                "KataGo分析失败：" + e.getMessage(), 
-                "错误", 
-                JOptionPane.ERROR_MESSAGE);
+            System.err.println("KataGo分析失败，改用内置搜索引擎：" + e.getMessage());
+            analyzeWithMcts();
         }
     }
+
+    /**
+     * 用内置的蒙特卡洛树搜索在后台分析当前局面，完成后结果同样交给形势判断并刷新显示
+     * 搜索在快照重建的棋盘上进行，不检查全局同形；局面已变化或形势判断已关闭时结果丢弃
+     */
+    private void analyzeWithMcts() {
+        if (mctsEngine == null) {
+            mctsEngine = new MctsEngine();
+        }
+        mctsEngine.stop();
+        final BoardSnapshot snapshot = game.getSnapshot();
+        new SwingWorker<SearchResult, Void>() {
+            @Override
+            protected SearchResult doInBackground() {
+                return mctsEngine.search(snapshot.toBitBoard(), null, snapshot.getTurn());
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    SearchResult result = get();
+                    if (!showSituation || game.getSnapshot().getHash() != snapshot.getHash()) {
+                        return;
+                    }
+                    result.applyTo(evaluator);
+                    showEvaluation();
+                    repaint();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
 }
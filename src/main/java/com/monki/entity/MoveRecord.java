@@ -0,0 +1,52 @@
+package com.monki.entity;
+
+import java.awt.Color;
+import java.io.Serializable;
+
+/**
+ * 不可变的落子记录
+ * 局面快照用它代替Stone：Stone会在提子和悔棋时被修改，记录发布后不再变化，可以在线程间共用
+ */
+public final class MoveRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int count;//手数
+    private final Color color;//棋子颜色
+    private final Position coordinate;//棋子的像素坐标
+    private final Position index;//棋子的棋盘索引
+
+    public MoveRecord(int count, Color color, Position coordinate, Position index) {
+        this.count = count;
+        this.color = color;
+        this.coordinate = coordinate;
+        this.index = index;
+    }
+
+    /**
+     * 按棋子当前的手数、颜色和坐标生成记录，不含是否被提
+     */
+    public static MoveRecord of(Stone stone) {
+        return new MoveRecord(stone.getCount(), stone.getColor(), stone.getCoordinate(), stone.getIndex());
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public Position getCoordinate() {
+        return coordinate;
+    }
+
+    public Position getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        String player = color.equals(Color.BLACK) ? "黑" : "白";
+        return "落子{" + count + ", 对局方=" + player + ", 图形学坐标=" + index + '}';
+    }
+}
@@ -1,24 +1,46 @@
 package com.monki.entity;
 
-import java.awt.*;
+import com.monki.core.BoardGeometry;
+
 import java.io.Serializable;
-import java.util.Objects;
 
-public class Position implements Serializable {
+/**
+ * 不可变的坐标
+ * 棋盘索引范围内的坐标预先创建好，通过of共用同一个实例，不再重复分配；
+ * 棋盘上的热点计算直接使用BoardGeometry的int点下标
+ */
+public final class Position implements Serializable {
     private static final long serialVersionUID = 2L;
-    private int i;
-    private int j;
-    private Color color;
-    public Position(int i, int j) {
-        this.i = i;
-        this.j = j;
+
+    private static final int RANGE = BoardGeometry.MAX_SIZE + 2;//含边框的索引范围[0, RANGE)
+    private static final Position[] CACHE = new Position[RANGE * RANGE];
+
+    static {
+        for (int i = 0; i < RANGE; i++) {
+            for (int j = 0; j < RANGE; j++) {
+                CACHE[i * RANGE + j] = new Position(i, j);
+            }
+        }
     }
 
-    public Position(int i, int j, Color color) {
+    private final int i;
+    private final int j;
+
+    private Position(int i, int j) {
         this.i = i;
         this.j = j;
-        this.color = color;
     }
+
+    /**
+     * 获取坐标，索引范围内返回共用的实例，超出范围（如像素坐标）时新建
+     */
+    public static Position of(int i, int j) {
+        if (i >= 0 && i < RANGE && j >= 0 && j < RANGE) {
+            return CACHE[i * RANGE + j];
+        }
+        return new Position(i, j);
+    }
+
     public int getI() {
         return i;
     }
@@ -27,13 +49,11 @@ public class Position implements Serializable {
         return j;
     }
 
-    public Color getColor() {
-        return color;
+    //反序列化时换回共用的实例
+    private Object readResolve() {
+        return of(i, j);
     }
 
-    public void setColor(Color color) {
-        this.color = color;
-    }
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -44,8 +64,9 @@ public class Position implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(i, j); // 使用 java.util.Objects 的 hash 方法
+        return 31 * i + j;
     }
+
     @Override
     public String toString() {
         return "(" + i + ", " + j+")";
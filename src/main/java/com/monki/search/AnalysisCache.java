@@ -0,0 +1,374 @@
+package com.monki.search;
+
+import com.monki.core.BitBoard;
+import com.monki.core.BoardGeometry;
+import com.monki.core.BoardSnapshot;
+import com.monki.core.Zobrist;
+import com.monki.entity.Position;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 分析结果缓存
+ * 键是局面在8种对称变换（旋转、翻转）下哈希最小的那个，再加上轮到的一方、路数、贴目和规则，
+ * 所以同一定式的不同方向、悔棋后又回到的局面都命中同一项。结果按规范方向保存，命中时再变换回查询的方向。
+ * 按最近使用淘汰，超过容量时丢掉最久没用的；可以指定文件，在会话之间保存
+ */
+public class AnalysisCache {
+    private static final int MAGIC = 0x4D4B4143;//文件头
+    private static final int VERSION = 2;//键中加入规则后旧文件作废
+    // 轮到白方、有劫时异或的随机数
+    private static final long WHITE_TO_MOVE = 0x3C6EF372FE94F82BL;
+    private static final long KO_SALT = 0xA54FF53A5F1D36F1L;
+
+    private final int capacity;
+    private final File file;//为null时不保存
+    private final LinkedHashMap<Long, CachedResult> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity 最多缓存的局面数
+     * @param file 保存缓存的文件，为null时只在内存中
+     */
+    public AnalysisCache(int capacity, File file) {
+        this.capacity = Math.max(1, capacity);
+        this.file = file;
+        this.entries = new LinkedHashMap<Long, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedResult> eldest) {
+                return size() > AnalysisCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 查找局面的分析结果，已变换到查询局面的方向
+     * @param komi 贴目
+     * @param rules 规则名，如chinese、japanese，不同规则的结果分开缓存
+     * @return 没有缓存时返回null
+     */
+    public SearchResult get(BoardSnapshot snapshot, double komi, String rules) {
+        Canonical canonical = canonicalize(snapshot, komi, rules);
+        CachedResult entry;
+        synchronized (this) {
+            entry = entries.get(canonical.key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return entry.toResult(canonical.symmetry);
+    }
+
+    /**
+     * 记下局面的分析结果，已有的结果访问次数更多时保留已有的
+     */
+    public void put(BoardSnapshot snapshot, double komi, String rules, SearchResult result) {
+        if (result == null) {
+            return;
+        }
+        Canonical canonical = canonicalize(snapshot, komi, rules);
+        CachedResult entry = CachedResult.of(result, snapshot.getSize(), canonical.symmetry);
+        synchronized (this) {
+            CachedResult old = entries.get(canonical.key);
+            if (old == null || old.visits <= entry.visits) {
+                entries.put(canonical.key, entry);
+            }
+        }
+    }
+
+    /**
+     * 局面的规范键和把局面变到规范方向的对称变换
+     * 对每种变换异或变换后各棋子的Zobrist随机数，取最小的哈希
+     */
+    private static Canonical canonicalize(BoardSnapshot snapshot, double komi, String rules) {
+        BoardGeometry geometry = snapshot.getGeometry();
+        int size = geometry.size;
+        long[] hashes = new long[8];
+        for (int p : geometry.points()) {
+            int color = snapshot.get(p);
+            if (color == BitBoard.EMPTY) {
+                continue;
+            }
+            int row = p / geometry.stride;
+            int col = p % geometry.stride;
+            for (int s = 0; s < 8; s++) {
+                hashes[s] ^= Zobrist.key(color, transform(geometry, s, row, col));
+            }
+        }
+        int ko = snapshot.getKoPoint();
+        if (ko >= 0) {
+            int row = ko / geometry.stride;
+            int col = ko % geometry.stride;
+            for (int s = 0; s < 8; s++) {
+                hashes[s] ^= Zobrist.key(BitBoard.BLACK, transform(geometry, s, row, col)) * KO_SALT;
+            }
+        }
+        int symmetry = 0;
+        for (int s = 1; s < 8; s++) {
+            if (hashes[s] < hashes[symmetry]) {
+                symmetry = s;
+            }
+        }
+        long key = hashes[symmetry];
+        if (snapshot.getTurn() == BitBoard.WHITE) {
+            key ^= WHITE_TO_MOVE;
+        }
+        key ^= size * 0x9E3779B97F4A7C15L;
+        key ^= Long.rotateLeft(Double.doubleToLongBits(komi), 17) * 0xC2B2AE3D27D4EB4FL;
+        key ^= Long.rotateLeft(rules.hashCode() * 0x165667B19E3779F9L, 29);
+        return new Canonical(key, symmetry);
+    }
+
+    /**
+     * 对称变换：第2位为转置，第0位为上下翻转，第1位为左右翻转，先转置再翻转
+     * @return 变换后的点
+     */
+    private static int transform(BoardGeometry geometry, int symmetry, int row, int col) {
+        int size = geometry.size;
+        if ((symmetry & 4) != 0) {
+            int t = row;
+            row = col;
+            col = t;
+        }
+        if ((symmetry & 1) != 0) {
+            row = size + 1 - row;
+        }
+        if ((symmetry & 2) != 0) {
+            col = size + 1 - col;
+        }
+        return geometry.point(row, col);
+    }
+
+    //逆变换：带转置时先翻转再转置，等价于交换两个翻转位后先转置再翻转
+    private static int inverse(int symmetry) {
+        if ((symmetry & 4) == 0) {
+            return symmetry;
+        }
+        return 4 | ((symmetry & 1) << 1) | ((symmetry & 2) >> 1);
+    }
+
+    /**
+     * 从文件读入缓存，文件不存在或格式不对时保持原样
+     */
+    public void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("分析缓存文件格式不对：" + file);
+                return;
+            }
+            int count = in.readInt();
+            List<Long> keys = new ArrayList<>();
+            List<CachedResult> loaded = new ArrayList<>();
+            for (int n = 0; n < count; n++) {
+                keys.add(in.readLong());
+                loaded.add(CachedResult.read(in));
+            }
+            synchronized (this) {
+                for (int n = 0; n < keys.size(); n++) {
+                    entries.put(keys.get(n), loaded.get(n));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("读取分析缓存失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 把缓存写入文件，按最久没用到最近使用的顺序，读回后淘汰顺序不变
+     */
+    public void save() {
+        if (file == null) {
+            return;
+        }
+        List<Map.Entry<Long, CachedResult>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            System.err.println("无法创建分析缓存目录：" + parent);
+            return;
+        }
+        // 先写临时文件再改名，写到一半退出时不破坏旧文件
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Long, CachedResult> item : snapshot) {
+                out.writeLong(item.getKey());
+                item.getValue().write(out);
+            }
+        } catch (IOException e) {
+            System.err.println("保存分析缓存失败：" + e.getMessage());
+            return;
+        }
+        if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+            System.err.println("保存分析缓存失败：无法替换" + file);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Canonical {
+        private final long key;
+        private final int symmetry;//把查询局面变到规范方向的变换
+
+        Canonical(long key, int symmetry) {
+            this.key = key;
+            this.symmetry = symmetry;
+        }
+    }
+
+    /**
+     * 一项缓存：规范方向下的结果，领地和访问比例按行优先存为size*size个float
+     */
+    private static class CachedResult {
+        private final int size;
+        private final int bestMove;//规范方向下的落子点，-1为虚手或没有
+        private final double whiteWinrate;
+        private final double whiteLead;
+        private final float[] ownership;
+        private final float[] distribution;
+        private final int visits;
+        private final long elapsedMillis;
+
+        CachedResult(int size, int bestMove, double whiteWinrate, double whiteLead,
+              float[] ownership, float[] distribution, int visits, long elapsedMillis) {
+            this.size = size;
+            this.bestMove = bestMove;
+            this.whiteWinrate = whiteWinrate;
+            this.whiteLead = whiteLead;
+            this.ownership = ownership;
+            this.distribution = distribution;
+            this.visits = visits;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        //把查询方向的结果变到规范方向
+        static CachedResult of(SearchResult result, int size, int symmetry) {
+            BoardGeometry geometry = BoardGeometry.of(size);
+            float[] ownership = new float[size * size];
+            float[] distribution = new float[size * size];
+            for (int row = 1; row <= size; row++) {
+                for (int col = 1; col <= size; col++) {
+                    int n = index(geometry, transform(geometry, symmetry, row, col));
+                    ownership[n] = read(result.getOwnership(), row, col);
+                    distribution[n] = read(result.getVisitDistribution(), row, col);
+                }
+            }
+            int best = -1;
+            Position position = result.getBestPosition();
+            if (position != null) {
+                best = transform(geometry, symmetry, position.getJ(), position.getI());
+            }
+            return new CachedResult(size, best, result.getWhiteWinrate(), result.getWhiteLead(),
+                    ownership, distribution, result.getVisits(), result.getElapsedMillis());
+        }
+
+        //变换回查询方向
+        SearchResult toResult(int symmetry) {
+            BoardGeometry geometry = BoardGeometry.of(size);
+            double[][] ownership = new double[size + 2][size + 2];
+            double[][] distribution = new double[size + 2][size + 2];
+            for (int row = 1; row <= size; row++) {
+                for (int col = 1; col <= size; col++) {
+                    int n = index(geometry, transform(geometry, symmetry, row, col));
+                    ownership[row][col] = this.ownership[n];
+                    distribution[row][col] = this.distribution[n];
+                }
+            }
+            int best = -1;
+            Position position = null;
+            if (bestMove >= 0) {
+                int back = inverse(symmetry);
+                best = transform(geometry, back, bestMove / geometry.stride, bestMove % geometry.stride);
+                position = Position.of(best % geometry.stride, best / geometry.stride);
+            }
+            return new SearchResult(best, position, whiteWinrate, whiteLead, ownership, distribution, visits, elapsedMillis);
+        }
+
+        //带边框的点到行优先下标
+        private static int index(BoardGeometry geometry, int point) {
+            return (point / geometry.stride - 1) * geometry.size + point % geometry.stride - 1;
+        }
+
+        private static float read(double[][] values, int row, int col) {
+            if (values == null || row >= values.length || col >= values[row].length) {
+                return 0f;
+            }
+            return (float) values[row][col];
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            out.writeInt(bestMove);
+            out.writeDouble(whiteWinrate);
+            out.writeDouble(whiteLead);
+            out.writeInt(visits);
+            out.writeLong(elapsedMillis);
+            for (float value : ownership) {
+                out.writeFloat(value);
+            }
+            for (float value : distribution) {
+                out.writeFloat(value);
+            }
+        }
+
+        static CachedResult read(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            if (size < BoardGeometry.MIN_SIZE || size > BoardGeometry.MAX_SIZE) {
+                throw new IOException("路数不对：" + size);
+            }
+            int bestMove = in.readInt();
+            double whiteWinrate = in.readDouble();
+            double whiteLead = in.readDouble();
+            int visits = in.readInt();
+            long elapsedMillis = in.readLong();
+            float[] ownership = new float[size * size];
+            float[] distribution = new float[size * size];
+            for (int n = 0; n < ownership.length; n++) {
+                ownership[n] = in.readFloat();
+            }
+            for (int n = 0; n < distribution.length; n++) {
+                distribution[n] = in.readFloat();
+            }
+            return new CachedResult(size, bestMove, whiteWinrate, whiteLead, ownership, distribution, visits, elapsedMillis);
+        }
+    }
+}
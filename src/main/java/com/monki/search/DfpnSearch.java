@@ -0,0 +1,249 @@
+package com.monki.search;
+
+import com.monki.core.Benson;
+import com.monki.core.BitBoard;
+import com.monki.core.BoardGeometry;
+import com.monki.core.Zobrist;
+
+/**
+ * 死活题的df-pn（深度优先证明数）搜索
+ * 攻方走的节点是OR节点，守方走的节点是AND节点，证明数pn表示证明“吃掉目标棋串”还需要展开的叶子数，
+ * 反证数dn表示证明“目标活下来”还需要的叶子数。每个节点按阈值深度优先展开证明数最小（或反证数最小）的子节点，
+ * 子节点的pn/dn保存在置换表里，键是Zobrist哈希加上轮到的一方、劫和连续虚手次数，
+ * 劫不同的局面能走的棋不同，不能共用结果。置换表大小按内存上限确定，冲突时直接覆盖。
+ * 只在给定区域内落子，双方都可以虚手，虚手解除劫；目标被提为攻方胜，目标无条件活、连续两次虚手或超过深度上限为守方胜。
+ * 虚手后可以重新提劫，局面可能在搜索路径上重复：攻方不走重复路径上局面的棋，守方走出重复局面时与连续虚手一样算守方胜，
+ * 所以证明出的攻方胜是可靠的（不考虑搜索路径以外的对局历史）。
+ * 一个实例只能由一个线程使用
+ */
+final class DfpnSearch {
+    static final int INF = Integer.MAX_VALUE / 4;
+    private static final int MAX_DEPTH = 64;
+    private static final long[] PASSES = {0x1F83D9ABFB41BD6BL, 0x3C6EF372FE94F82BL, 0x510E527FADE682D1L};//连续虚手次数对应的异或值
+    private static final long WHITE_TO_MOVE = 0xA54FF53A5F1D36F1L;
+
+    private final BoardGeometry geometry;
+    private final BitBoard board;
+    private final Benson benson;
+    private final long[] keys;
+    private final int[] pns;
+    private final int[] dns;
+    private final int mask;
+    private final int[] moves;//每层的候选点，-1为虚手
+    private final long[] path = new long[MAX_DEPTH + 1];//搜索路径上每层的局面哈希
+    private final int stride;
+
+    // 当前问题
+    private long[] region;
+    private int target;
+    private int attacker;
+    private long deadline;
+    private long nodes;
+    private boolean timeout;
+
+    /**
+     * @param memoryBytes 置换表占用的内存上限
+     */
+    DfpnSearch(BoardGeometry geometry, long memoryBytes) {
+        this.geometry = geometry;
+        board = new BitBoard(geometry);
+        benson = new Benson(geometry);
+        int slots = Integer.highestOneBit((int) Math.max(1024, Math.min(1 << 28, memoryBytes / 16)));
+        keys = new long[slots];
+        pns = new int[slots];
+        dns = new int[slots];
+        mask = slots - 1;
+        stride = geometry.pointCount + 1;
+        moves = new int[(MAX_DEPTH + 1) * stride];
+    }
+
+    BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * 求解一道死活题
+     * @param position 局面，不会被修改
+     * @param area 允许落子的区域
+     * @param point 目标棋串中的一点，守方为这个棋串的一方
+     * @param toMove 先走的一方
+     * @param millis 时间上限
+     * @return 攻方能吃掉目标返回1，守方能活返回-1，时间用完还没有结果返回0
+     */
+    int solve(BitBoard position, long[] area, int point, int toMove, long millis) {
+        board.copyFrom(position);
+        region = area;
+        target = point;
+        attacker = -position.get(point);
+        deadline = System.currentTimeMillis() + millis;
+        nodes = 0;
+        timeout = false;
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = 0L;
+        }
+        long key = key(board.getHash(), board.getKoPoint(), toMove, 0);
+        while (!timeout) {
+            mid(toMove, 0, 0, INF, INF);
+            int slot = slot(key);
+            if (keys[slot] == key && pns[slot] == 0) {
+                return 1;
+            }
+            if (keys[slot] == key && dns[slot] == 0) {
+                return -1;
+            }
+        }
+        return 0;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    //多重迭代深化：展开节点直到它的pn或dn达到阈值，结果写入置换表
+    private void mid(int color, int passes, int depth, int thpn, int thdn) {
+        long key = key(board.getHash(), board.getKoPoint(), color, passes);
+        if ((++nodes & 1023) == 0 && System.currentTimeMillis() >= deadline) {
+            timeout = true;
+        }
+        path[depth] = board.getHash();
+        int result = terminal(color, passes, depth);
+        if (result != 0) {
+            store(key, result > 0 ? 0 : INF, result > 0 ? INF : 0);
+            return;
+        }
+        boolean or = color == attacker;
+        int base = depth * stride;
+        int count = generate(color, base, depth);
+        while (true) {
+            int best = -1;
+            int bestValue = INF + 1;
+            int second = INF;
+            int bestOther = 0;
+            int sum = 0;
+            for (int k = 0; k < count; k++) {
+                long child = childKey(moves[base + k], color, passes);
+                int slot = slot(child);
+                boolean known = keys[slot] == child;
+                int pn = known ? pns[slot] : 1;
+                int dn = known ? dns[slot] : 1;
+                int value = or ? pn : dn;
+                int other = or ? dn : pn;
+                sum = Math.min(INF, sum + other);
+                if (value < bestValue) {
+                    second = Math.min(second, bestValue);
+                    bestValue = value;
+                    bestOther = other;
+                    best = k;
+                } else if (value < second) {
+                    second = value;
+                }
+            }
+            int pn = or ? bestValue : sum;
+            int dn = or ? sum : bestValue;
+            if (count == 0) {
+                pn = or ? INF : 0;
+                dn = or ? 0 : INF;
+            }
+            if (pn >= thpn || dn >= thdn || timeout) {
+                store(key, Math.min(pn, INF), Math.min(dn, INF));
+                return;
+            }
+            // 子节点的阈值：不超过次优子节点，同时保证父节点不越过自己的阈值
+            int childPn;
+            int childDn;
+            if (or) {
+                childPn = Math.min(thpn, second + 1);
+                childDn = Math.min(INF, thdn - dn + bestOther);
+            } else {
+                childDn = Math.min(thdn, second + 1);
+                childPn = Math.min(INF, thpn - pn + bestOther);
+            }
+            int move = moves[base + best];
+            if (move >= 0) {
+                board.play(move, color);
+            } else {
+                board.pass(color);
+            }
+            mid(-color, move < 0 ? passes + 1 : 0, depth + 1, childPn, childDn);
+            board.undo();
+        }
+    }
+
+    //终局判断：攻方胜返回1，守方胜返回-1，否则返回0
+    private int terminal(int color, int passes, int depth) {
+        if (board.get(target) != -attacker) {
+            return 1;
+        }
+        if (passes >= 2 || depth >= MAX_DEPTH) {
+            return -1;
+        }
+        // 守方刚落的子（不是虚手）使局面回到路径上出现过的局面
+        if (passes == 0 && color == attacker && repeats(board.getHash(), depth)) {
+            return -1;
+        }
+        if (board.getLiberty(target) >= 2) {
+            benson.compute(board);
+            if (benson.isPassAlive(target)) {
+                return -1;
+            }
+        }
+        return 0;
+    }
+
+    //局面哈希是否在搜索路径上depth之前出现过
+    private boolean repeats(long hash, int depth) {
+        for (int d = depth - 1; d >= 0; d--) {
+            if (path[d] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //区域内的合法点加虚手，攻方不走回到路径上局面的棋
+    private int generate(int color, int base, int depth) {
+        int count = 0;
+        long[] empty = board.getEmpty();
+        for (int w = 0; w < region.length; w++) {
+            long bits = region[w] & empty[w];
+            while (bits != 0) {
+                int p = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (board.isLegal(p, color, null)
+                        && (color != attacker || !repeats(board.hashAfter(p, color), depth + 1))) {
+                    moves[base + count++] = p;
+                }
+            }
+        }
+        moves[base + count++] = -1;
+        return count;
+    }
+
+    //子节点的键，与落子（或虚手）后mid计算的键一致，虚手后没有劫
+    private long childKey(int move, int color, int passes) {
+        if (move < 0) {
+            return key(board.getHash(), -1, -color, passes + 1);
+        }
+        return key(board.hashAfter(move, color), board.koAfter(move, color), -color, 0);
+    }
+
+    //局面键：哈希加上劫、轮到哪一方和连续虚手的次数，连续两次虚手的局面是终局，与其他局面区分开
+    private static long key(long hash, int ko, int color, int passes) {
+        long key = color == BitBoard.WHITE ? hash ^ WHITE_TO_MOVE : hash;
+        if (ko >= 0) {
+            key ^= Long.rotateLeft(Zobrist.key(BitBoard.BLACK, ko), 29);
+        }
+        return key ^ PASSES[passes];
+    }
+
+    private void store(long key, int pn, int dn) {
+        int slot = slot(key);
+        keys[slot] = key;
+        pns[slot] = pn;
+        dns[slot] = dn;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
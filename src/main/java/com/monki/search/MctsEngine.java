@@ -0,0 +1,435 @@
+package com.monki.search;
+
+import com.monki.core.Benson;
+import com.monki.core.BitBoard;
+import com.monki.core.BoardGeometry;
+import com.monki.core.GameState;
+import com.monki.core.Ladder;
+import com.monki.core.Patterns;
+import com.monki.core.Playout;
+import com.monki.core.PositionHistory;
+import com.monki.entity.Position;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 内置的蒙特卡洛树搜索引擎，没有KataGo时用于形势判断和推荐落子
+ * 多个线程共用一棵树（树并行）：选择时用UCT并给经过的节点加虚拟损失，叶子节点用Playout随机模拟到终局，
+ * 节点统计用原子操作更新，不加锁。每个线程有自己的棋盘和模拟器，线程之间只共享树。
+ * 节点存放在NodeStore的数组里，搜索时不创建节点对象；下一手开始时通过置换表找到新局面在旧树中的节点，
+ * 压缩后保留它的子树继续搜索。胜率和目差按节点累计在树中，沿用的子树连同它的统计一起保留；
+ * 领地只按根节点累计，同一局面再次搜索时接着累加
+ */
+public class MctsEngine {
+    private static final double EXPLORATION = 0.7;//UCT探索系数
+    private static final double FIRST_PLAY_URGENCY = 1.0;//未访问节点的得分，保证每个子节点至少被试一次
+    private static final int EXPAND_VISITS = 2;//节点访问到这个次数才展开子节点
+    private static final int DEFAULT_CAPACITY = 1 << 20;//默认节点容量，约50MB
+
+    private final int threads;
+    private final ExecutorService pool;
+    private final NodeStore store;
+    private final TranspositionTable table;
+
+    private volatile int maxVisits = 20000;//每次搜索新增的根节点访问次数上限，沿用的访问不计入
+    private volatile long timeLimitMillis = 3000;//搜索时间上限
+    private volatile double komi = 7.5;//贴目（数子法）
+    private volatile boolean stopped;
+
+    private Worker[] workers;
+    private Benson benson;
+    private long seed = System.nanoTime();
+
+    // 当前搜索的状态，search开始时设置，工作线程只读
+    private BitBoard rootBoard;
+    private int rootColor;
+    private int root;
+    private int visitsAtStart;//沿用的子树在搜索开始时已有的访问次数
+    private long deadline;
+    private long[] settled;//根局面双方无条件的地，树中不在这些点落子
+
+    // 根局面每个点终局归属的累计值，同一局面再次搜索时沿用
+    private long[] rootOwner;
+    private long rootOwnerPlayouts;
+    private long rootOwnerKey;
+
+    public MctsEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads 搜索线程数
+     */
+    public MctsEngine(int threads) {
+        this(threads, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param threads 搜索线程数
+     * @param nodeCapacity 节点容量，决定搜索树占用的内存
+     */
+    public MctsEngine(int threads, int nodeCapacity) {
+        this.threads = Math.max(1, threads);
+        this.store = new NodeStore(nodeCapacity);
+        this.table = new TranspositionTable(store);
+        this.pool = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "mcts-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 搜索对局当前轮到的一方
+     */
+    public SearchResult search(GameState game) {
+        return search(game.getBoard(), game.getHistory(), game.getTurn());
+    }
+
+    /**
+     * 从给定局面开始搜索，到达访问次数或时间上限、或调用stop后返回
+     * @param board 局面，不会被修改
+     * @param history 对局历史，根节点用它排除全局同形，可以为null
+     * @param color 轮到的一方 -1黑 1白
+     */
+    public synchronized SearchResult search(BitBoard board, PositionHistory history, int color) {
+        long start = System.currentTimeMillis();
+        BoardGeometry geometry = board.getGeometry();
+        prepareWorkers(geometry);
+        rootBoard = board.copy();
+        rootColor = color;
+        findSettled(rootBoard);
+        root = findRoot(rootBoard, color);
+        if (store.isExpanded(root)) {
+            pruneRoot(history);
+        } else if (store.tryExpand(root)) {
+            expand(root, rootBoard, color, history, workers[0]);
+        }
+        visitsAtStart = store.visits(root);
+        deadline = start + timeLimitMillis;
+        stopped = false;
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (Worker worker : workers) {
+            futures.add(pool.submit(worker));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                stopped = true;
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                stopped = true;
+                e.printStackTrace();
+            }
+        }
+        return collect(geometry, System.currentTimeMillis() - start);
+    }
+
+    private void prepareWorkers(BoardGeometry geometry) {
+        if (workers != null && workers[0].board.getGeometry() == geometry) {
+            return;
+        }
+        benson = new Benson(geometry);
+        settled = new long[geometry.words];
+        rootOwner = new long[geometry.length];
+        rootOwnerPlayouts = 0;
+        workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(geometry, seed + t * 0x9E3779B97F4A7C15L);
+        }
+        seed += threads;
+    }
+
+    //无条件的地里落子不会改变结果，己方是填自己的地，对方是送死
+    private void findSettled(BitBoard board) {
+        benson.compute(board);
+        long[] black = benson.getTerritory(BitBoard.BLACK);
+        long[] white = benson.getTerritory(BitBoard.WHITE);
+        for (int w = 0; w < settled.length; w++) {
+            settled[w] = black[w] | white[w];
+        }
+    }
+
+    //在旧树中查找当前局面，找到时只保留它的子树，否则清空节点仓库从头开始；换了局面时领地重新累计
+    private int findRoot(BitBoard board, int color) {
+        long key = TranspositionTable.key(board.getHash(), color);
+        int node = table.get(key);
+        boolean reuse = node != NodeStore.NONE && store.player(node) == -color;
+        if (!reuse || key != rootOwnerKey) {
+            Arrays.fill(rootOwner, 0);
+            rootOwnerPlayouts = 0;
+            rootOwnerKey = key;
+        }
+        if (reuse) {
+            store.compact(node);
+            table.rebuild();
+            return 0;
+        }
+        store.clear();
+        table.clear();
+        int fresh = store.allocate(1);
+        store.init(fresh, -1, -color, key);
+        table.put(key, fresh);
+        return fresh;
+    }
+
+    //沿用的根节点展开时没有检查全局同形，按对局历史排除此时不合法的子节点，以及后来成为无条件的地的点
+    private void pruneRoot(PositionHistory history) {
+        int first = store.firstChild(root);
+        for (int c = first; c < first + store.childCount(root); c++) {
+            int point = store.point(c);
+            if (point >= 0 && (!rootBoard.isLegal(point, rootColor, history) || BitBoard.testBit(settled, point))) {
+                store.prune(c);
+            }
+        }
+    }
+
+    //汇总根节点的统计和访问分布：胜率和目差取自整棵沿用的子树，领地把本次的模拟累加到根局面的累计值上
+    private SearchResult collect(BoardGeometry geometry, long elapsed) {
+        int size = geometry.size;
+        for (Worker worker : workers) {
+            rootOwnerPlayouts += worker.playouts;
+            for (int p : geometry.points()) {
+                rootOwner[p] += worker.owner[p];
+            }
+        }
+
+        double[][] ownership = new double[size + 2][size + 2];
+        double[][] distribution = new double[size + 2][size + 2];
+        int total = store.visits(root);
+        for (int p : geometry.points()) {
+            ownership[geometry.rowOf(p)][geometry.colOf(p)] = rootOwnerPlayouts == 0 ? 0 : (double) rootOwner[p] / rootOwnerPlayouts;
+        }
+
+        int best = -1;
+        int bestVisits = -1;
+        int first = store.firstChild(root);
+        for (int child = first; child < first + store.childCount(root); child++) {
+            if (store.isPruned(child)) {
+                continue;
+            }
+            int point = store.point(child);
+            int visits = store.visits(child);
+            if (point >= 0 && total > 0) {
+                distribution[geometry.rowOf(point)][geometry.colOf(point)] = (double) visits / total;
+            }
+            if (visits > bestVisits) {
+                bestVisits = visits;
+                best = point;
+            }
+        }
+        Position position = best < 0 ? null : Position.of(geometry.colOf(best), geometry.rowOf(best));
+        // 根节点的胜局数按到达根局面的落子方统计
+        double wins = total == 0 ? 0.5 : (double) store.wins(root) / total;
+        double winrate = store.player(root) == BitBoard.WHITE ? wins : 1 - wins;
+        double lead = total == 0 ? 0 : store.leadSum(root) / total;
+        return new SearchResult(best, position, winrate, lead, ownership, distribution, total, elapsed);
+    }
+
+    /**
+     * 生成节点的子节点：所有合法、不填己方眼且不在无条件的地里的点，没有时只有虚手。调用前应已通过tryExpand取得扩展权
+     * 子节点按3x3图案权重排序，匹配图案的点排在前面，未访问的子节点得分相同时先被选中；
+     * 征子救不出的长出排在最后。子节点的局面键记入置换表，下一手可以直接找到
+     */
+    private void expand(int node, BitBoard board, int color, PositionHistory history, Worker worker) {
+        int[] legal = worker.moves;
+        int[] moves = worker.ordered;
+        int total = 0;
+        int legalCount = board.legalMoves(color, history, legal);
+        for (int k = 0; k < legalCount; k++) {
+            if (!BitBoard.testBit(settled, legal[k])) {
+                legal[total++] = legal[k];
+            }
+        }
+        // 征子救不出的长出换到末尾，前n个是其余的点
+        int n = total;
+        for (int k = 0; k < n; ) {
+            if (worker.ladder.isFutileEscape(board, legal[k], color)) {
+                int t = legal[k];
+                legal[k] = legal[--n];
+                legal[n] = t;
+            } else {
+                k++;
+            }
+        }
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            if (Patterns.isMatch(board.pattern(legal[k])) && !board.isEye(legal[k], color)) {
+                moves[count++] = legal[k];
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            int weight = Patterns.weight(board.pattern(legal[k]));
+            if (weight == Patterns.CONTACT && !board.isEye(legal[k], color)) {
+                moves[count++] = legal[k];
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            if (Patterns.weight(board.pattern(legal[k])) == Patterns.QUIET) {
+                moves[count++] = legal[k];
+            }
+        }
+        for (int k = n; k < total; k++) {
+            if (!board.isEye(legal[k], color)) {
+                moves[count++] = legal[k];
+            }
+        }
+        int first = store.allocate(Math.max(1, count));
+        if (first == NodeStore.NONE) {
+            store.markFull(node);
+            return;
+        }
+        if (count == 0) {
+            long key = TranspositionTable.key(board.getHash(), -color);
+            store.init(first, -1, color, key);
+            table.put(key, first);
+            count = 1;
+        } else {
+            for (int k = 0; k < count; k++) {
+                long key = TranspositionTable.key(board.hashAfter(moves[k], color), -color);
+                store.init(first + k, moves[k], color, key);
+                table.put(key, first + k);
+            }
+        }
+        store.publish(node, first, count);
+    }
+
+    private int select(int node) {
+        double logParent = Math.log(store.visits(node) + 1);
+        int first = store.firstChild(node);
+        int best = NodeStore.NONE;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < first + store.childCount(node); child++) {
+            double score = store.score(child, logParent, EXPLORATION, FIRST_PLAY_URGENCY);
+            if (score > bestScore && !store.isPruned(child)) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private boolean shouldStop() {
+        return stopped || store.visits(root) - visitsAtStart >= maxVisits || System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * 提前结束正在进行的搜索
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public void setMaxVisits(int maxVisits) {
+        this.maxVisits = maxVisits;
+    }
+
+    public void setTimeLimit(long millis) {
+        this.timeLimitMillis = millis;
+    }
+
+    public void setKomi(double komi) {
+        this.komi = komi;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * 关闭搜索线程池
+     */
+    public void shutdown() {
+        stopped = true;
+        pool.shutdownNow();
+    }
+
+    /**
+     * 搜索线程：反复执行选择、扩展、模拟、回传，直到搜索结束
+     */
+    private class Worker implements Callable<Void> {
+        private final BitBoard board;
+        private final Playout playout;
+        private final int[] path;
+        private final int[] moves;
+        private final int[] ordered;
+        private final int[] owner;//本次搜索每个点终局归属的累计值
+        private final Ladder ladder;
+        private long playouts;
+
+        Worker(BoardGeometry geometry, long seed) {
+            board = new BitBoard(geometry);
+            playout = new Playout(geometry, seed);
+            path = new int[geometry.pointCount * 2];
+            moves = new int[geometry.pointCount];
+            ordered = new int[geometry.pointCount];
+            owner = new int[geometry.length];
+            ladder = new Ladder(geometry);
+        }
+
+        @Override
+        public Void call() {
+            playouts = 0;
+            Arrays.fill(owner, 0);
+            // 至少模拟一次，立即结束的搜索也有本局面的领地
+            do {
+                iterate();
+            } while (!shouldStop());
+            return null;
+        }
+
+        private void iterate() {
+            board.copyFrom(rootBoard);
+            int node = root;
+            int color = rootColor;
+            int depth = 0;
+            path[depth++] = root;
+            while (depth < path.length) {
+                if (!store.isExpanded(node)) {
+                    if (store.visits(node) < EXPAND_VISITS || !store.tryExpand(node)) {
+                        break;
+                    }
+                    expand(node, board, color, null, this);
+                    if (!store.isExpanded(node)) {
+                        break;
+                    }
+                }
+                int child = select(node);
+                if (child == NodeStore.NONE) {
+                    break;
+                }
+                store.addVirtualLoss(child);
+                int point = store.point(child);
+                if (point >= 0) {
+                    board.play(point, color);
+                } else {
+                    board.pass(color);
+                }
+                color = -color;
+                node = child;
+                path[depth++] = child;
+            }
+
+            double lead = playout.run(board, color, komi);
+            int winner = lead > 0 ? BitBoard.WHITE : BitBoard.BLACK;
+            playouts++;
+            for (int p : board.getGeometry().points()) {
+                owner[p] += playout.getOwner(p);
+            }
+
+            store.update(root, winner == store.player(root), lead, false);
+            for (int k = 1; k < depth; k++) {
+                store.update(path[k], winner == store.player(path[k]), lead, true);
+            }
+        }
+    }
+}
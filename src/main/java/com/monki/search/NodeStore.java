@@ -0,0 +1,244 @@
+package com.monki.search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 搜索树节点仓库
+ * 所有节点的字段按列存放在预先分配好的基本类型数组里，用int下标引用节点，搜索过程中不创建对象，
+ * 每个节点固定占用约48字节，容量在构造时确定。同一节点的子节点占用连续的一段下标，
+ * 只需记录第一个子节点和子节点数。
+ * 换到下一手时用滑动压缩把保留下来的子树移到数组开头，不重新分配数组
+ */
+final class NodeStore {
+    static final int NONE = -1;
+
+    // 节点的展开状态
+    private static final int LEAF = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+    private static final int FULL = 3;//仓库已满，只能作为叶子
+
+    private static final long VISIT = 1L << 32;
+    private static final double LEAD_SCALE = 1000;//目差按千分之一目的定点数累加
+
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int[] point;//到达节点的落子点，-1为虚手
+    private final byte[] player;//到达节点的落子方 -1黑 1白
+    private final byte[] pruned;//根节点上因全局同形被排除的子节点
+    private final long[] key;//节点局面的置换表键
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final AtomicLongArray stats;//高32位访问次数，低32位落子方的胜局数
+    private final AtomicLongArray leadSum;//经过节点的模拟的白方目差之和，定点数
+    private final AtomicIntegerArray virtualLoss;//正在经过节点的线程数
+    private final AtomicIntegerArray state;//展开状态，写入EXPANDED之后子节点才对其他线程可见
+    private final int[] forward;//压缩时的新下标
+
+    NodeStore(int capacity) {
+        this.capacity = capacity;
+        point = new int[capacity];
+        player = new byte[capacity];
+        pruned = new byte[capacity];
+        key = new long[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        stats = new AtomicLongArray(capacity);
+        leadSum = new AtomicLongArray(capacity);
+        virtualLoss = new AtomicIntegerArray(capacity);
+        state = new AtomicIntegerArray(capacity);
+        forward = new int[capacity];
+    }
+
+    /**
+     * 分配连续的count个节点
+     * @return 第一个节点的下标，仓库已满时返回NONE
+     */
+    int allocate(int count) {
+        while (true) {
+            int start = size.get();
+            if (start + count > capacity) {
+                return NONE;
+            }
+            if (size.compareAndSet(start, start + count)) {
+                return start;
+            }
+        }
+    }
+
+    void init(int node, int move, int color, long positionKey) {
+        point[node] = move;
+        player[node] = (byte) color;
+        pruned[node] = 0;
+        key[node] = positionKey;
+        firstChild[node] = NONE;
+        childCount[node] = 0;
+        stats.set(node, 0L);
+        leadSum.set(node, 0L);
+        virtualLoss.set(node, 0);
+        state.set(node, LEAF);
+    }
+
+    int point(int node) {
+        return point[node];
+    }
+
+    int player(int node) {
+        return player[node];
+    }
+
+    long key(int node) {
+        return key[node];
+    }
+
+    int visits(int node) {
+        return (int) (stats.get(node) >>> 32);
+    }
+
+    int wins(int node) {
+        return (int) stats.get(node);
+    }
+
+    /**
+     * 经过节点的所有模拟的白方目差之和，除以访问次数得到平均目差
+     */
+    double leadSum(int node) {
+        return leadSum.get(node) / LEAD_SCALE;
+    }
+
+    boolean isExpanded(int node) {
+        return state.get(node) == EXPANDED;
+    }
+
+    /**
+     * 第一个子节点，读之前应先用isExpanded确认已展开
+     */
+    int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    int childCount(int node) {
+        return childCount[node];
+    }
+
+    /**
+     * 抢占扩展权，只有一个线程会返回true
+     */
+    boolean tryExpand(int node) {
+        return state.get(node) == LEAF && state.compareAndSet(node, LEAF, EXPANDING);
+    }
+
+    /**
+     * 子节点初始化完成后发布给其他线程
+     */
+    void publish(int node, int first, int count) {
+        firstChild[node] = first;
+        childCount[node] = count;
+        state.set(node, EXPANDED);
+    }
+
+    /**
+     * 仓库已满无法展开，节点以后只作为叶子
+     */
+    void markFull(int node) {
+        state.set(node, FULL);
+    }
+
+    void prune(int node) {
+        pruned[node] = 1;
+    }
+
+    boolean isPruned(int node) {
+        return pruned[node] != 0;
+    }
+
+    /**
+     * 选择时的得分：胜率加探索项，虚拟损失按输棋计入，让其他线程优先走别的分支
+     */
+    double score(int node, double logParent, double exploration, double firstPlayUrgency) {
+        long s = stats.get(node);
+        int n = (int) (s >>> 32) + virtualLoss.get(node);
+        if (n == 0) {
+            return firstPlayUrgency;
+        }
+        return (double) (int) s / n + exploration * Math.sqrt(logParent / n);
+    }
+
+    void addVirtualLoss(int node) {
+        virtualLoss.incrementAndGet(node);
+    }
+
+    /**
+     * 回传一次模拟结果，同时撤销经过时加的虚拟损失
+     * @param lead 这次模拟终局的白方目差
+     */
+    void update(int node, boolean win, double lead, boolean virtual) {
+        stats.getAndAdd(node, win ? VISIT + 1 : VISIT);
+        leadSum.getAndAdd(node, Math.round(lead * LEAD_SCALE));
+        if (virtual) {
+            virtualLoss.decrementAndGet(node);
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void clear() {
+        size.set(0);
+    }
+
+    /**
+     * 只保留以root为根的子树，按原来的顺序滑动到数组开头，root成为0号节点
+     * 子节点的下标总是大于父节点，所以一次从小到大的扫描就能标记出整棵子树；
+     * 节点只会往前移动，按下标顺序搬移不会覆盖还没搬的节点。只能在没有搜索线程运行时调用
+     * @return 压缩后的节点数
+     */
+    int compact(int root) {
+        int end = size.get();
+        for (int n = root; n < end; n++) {
+            forward[n] = NONE;
+        }
+        forward[root] = 0;
+        for (int n = root; n < end; n++) {
+            if (forward[n] != NONE && state.get(n) == EXPANDED) {
+                int first = firstChild[n];
+                for (int c = first; c < first + childCount[n]; c++) {
+                    forward[c] = 0;
+                }
+            }
+        }
+        int live = 0;
+        for (int n = root; n < end; n++) {
+            if (forward[n] != NONE) {
+                forward[n] = live++;
+            }
+        }
+        for (int n = root; n < end; n++) {
+            int to = forward[n];
+            if (to == NONE) {
+                continue;
+            }
+            point[to] = point[n];
+            player[to] = player[n];
+            pruned[to] = 0;
+            key[to] = key[n];
+            childCount[to] = childCount[n];
+            firstChild[to] = state.get(n) == EXPANDED ? forward[firstChild[n]] : NONE;
+            stats.set(to, stats.get(n));
+            leadSum.set(to, leadSum.get(n));
+            virtualLoss.set(to, 0);
+            int s = state.get(n);
+            state.set(to, s == EXPANDED ? EXPANDED : LEAF);//仓库有了空间，已满的节点可以重新展开
+        }
+        size.set(live);
+        return live;
+    }
+}
@@ -0,0 +1,153 @@
+package com.monki.search;
+
+import com.monki.core.BitBoard;
+import com.monki.core.BoardGeometry;
+import com.monki.core.GameState;
+import com.monki.core.Playout;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 蒙特卡洛领地估计
+ * 从当前局面做N次随机模拟，统计每个点终局归属的平均值，结果与KataGo的ownership格式相同。
+ * 模拟次数在ForkJoin线程池上二分拆成小块，每个线程用自己的Playout（含棋盘），
+ * 各块的累计值在合并子任务时相加，不加锁
+ */
+public class OwnershipEstimator {
+    private static final int CHUNK = 64;//不再拆分的模拟次数
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Playout> playouts = new ThreadLocal<>();
+    private final AtomicInteger generation = new AtomicInteger();//每次估计加1，旧的估计发现变化后提前结束
+    private volatile double komi = 7.5;
+
+    public OwnershipEstimator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 并行线程数
+     */
+    public OwnershipEstimator(int parallelism) {
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * 估计对局当前局面的领地
+     */
+    public SearchResult estimate(GameState game, int count) {
+        return estimate(game.getBoard(), game.getTurn(), count);
+    }
+
+    /**
+     * 从给定局面做count次模拟，返回平均的领地、白方胜率和目差
+     * 开始新的估计或调用stop后，正在进行的估计提前结束，只统计已完成的模拟
+     * @param board 局面，不会被修改
+     * @param color 轮到的一方 -1黑 1白
+     */
+    public SearchResult estimate(BitBoard board, int color, int count) {
+        long start = System.currentTimeMillis();
+        BoardGeometry geometry = board.getGeometry();
+        BitBoard position = board.copy();
+        Batch batch = pool.invoke(new Batch(position, color, count, generation.incrementAndGet()));
+
+        int size = geometry.size;
+        double[][] ownership = new double[size + 2][size + 2];
+        int done = Math.max(1, batch.playouts);
+        for (int p : geometry.points()) {
+            ownership[geometry.rowOf(p)][geometry.colOf(p)] = (double) batch.owner[p] / done;
+        }
+        return new SearchResult(-1, null, (double) batch.whiteWins / done, batch.leadSum / done,
+                ownership, new double[size + 2][size + 2], batch.playouts, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 提前结束正在进行的估计
+     */
+    public void stop() {
+        generation.incrementAndGet();
+    }
+
+    public void setKomi(double komi) {
+        this.komi = komi;
+    }
+
+    /**
+     * 关闭线程池
+     */
+    public void shutdown() {
+        stop();
+        pool.shutdownNow();
+    }
+
+    //当前线程的模拟器，路数变化时重建
+    private Playout playout(BoardGeometry geometry) {
+        Playout playout = playouts.get();
+        if (playout == null || playout.getGeometry() != geometry) {
+            playout = new Playout(geometry, System.nanoTime() ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L);
+            playouts.set(playout);
+        }
+        return playout;
+    }
+
+    /**
+     * 一批模拟：次数多时拆成两半分别执行，否则在当前线程直接模拟，结果为本批的累计值
+     */
+    private class Batch extends RecursiveTask<Batch> {
+        private static final long serialVersionUID = 1L;
+
+        private final BitBoard position;
+        private final int color;
+        private final int count;
+        private final int id;//所属估计的编号
+        private int[] owner;//每个点终局归属的累计值
+        private int playouts;
+        private int whiteWins;
+        private double leadSum;
+
+        Batch(BitBoard position, int color, int count, int id) {
+            this.position = position;
+            this.color = color;
+            this.count = count;
+            this.id = id;
+        }
+
+        @Override
+        protected Batch compute() {
+            if (count > CHUNK) {
+                Batch left = new Batch(position, color, count / 2, id);
+                Batch right = new Batch(position, color, count - count / 2, id);
+                left.fork();
+                Batch result = right.compute();
+                result.merge(left.join());
+                return result;
+            }
+            BoardGeometry geometry = position.getGeometry();
+            Playout playout = playout(geometry);
+            owner = new int[geometry.length];
+            for (int k = 0; k < count && generation.get() == id; k++) {
+                double lead = playout.run(position, color, komi);
+                playouts++;
+                leadSum += lead;
+                if (lead > 0) {
+                    whiteWins++;
+                }
+                for (int p : geometry.points()) {
+                    owner[p] += playout.getOwner(p);
+                }
+            }
+            return this;
+        }
+
+        private void merge(Batch other) {
+            for (int p = 0; p < owner.length; p++) {
+                owner[p] += other.owner[p];
+            }
+            playouts += other.playouts;
+            whiteWins += other.whiteWins;
+            leadSum += other.leadSum;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.monki.search;
+
+import com.monki.entity.Position;
+import com.monki.util.PositionEvaluator;
+
+/**
+ * 一次搜索的结果
+ * 胜率、目差和领地都以白方为正，与KataGo的输出约定一致，
+ * 数组按[行][列]下标，从1开始
+ */
+public class SearchResult {
+    private final int bestMove;//访问次数最多的落子点，-1为虚手
+    private final Position bestPosition;//bestMove对应的棋盘索引，虚手时为null
+    private final double whiteWinrate;
+    private final double whiteLead;
+    private final double[][] ownership;//每个点终局归属的平均值 -1黑 1白
+    private final double[][] visitDistribution;//根节点各落子点的访问比例
+    private final int visits;
+    private final long elapsedMillis;
+
+    public SearchResult(int bestMove, Position bestPosition, double whiteWinrate, double whiteLead,
+                        double[][] ownership, double[][] visitDistribution, int visits, long elapsedMillis) {
+        this.bestMove = bestMove;
+        this.bestPosition = bestPosition;
+        this.whiteWinrate = whiteWinrate;
+        this.whiteLead = whiteLead;
+        this.ownership = ownership;
+        this.visitDistribution = visitDistribution;
+        this.visits = visits;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public Position getBestPosition() {
+        return bestPosition;
+    }
+
+    public double getWhiteWinrate() {
+        return whiteWinrate;
+    }
+
+    public double getWhiteLead() {
+        return whiteLead;
+    }
+
+    public double[][] getOwnership() {
+        return ownership;
+    }
+
+    public double[][] getVisitDistribution() {
+        return visitDistribution;
+    }
+
+    public int getVisits() {
+        return visits;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 把结果交给形势判断，访问比例作为policy，与KataGo的分析结果走同一个接口
+     */
+    public void applyTo(PositionEvaluator evaluator) {
+        evaluator.setKataGoEvaluation(whiteWinrate, whiteLead, ownership, visitDistribution);
+    }
+
+    @Override
+    public String toString() {
+        return "搜索{" +
+                "最佳=" + bestPosition +
+                " 白胜率=" + String.format("%.3f", whiteWinrate) +
+                " 白领先=" + String.format("%.1f", whiteLead) +
+                " 访问=" + visits +
+                " 用时=" + elapsedMillis + "ms" +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.monki.search;
+
+import com.monki.core.BitBoard;
+
+import java.util.Arrays;
+
+/**
+ * 置换表：局面的Zobrist哈希（含轮到哪一方）到节点下标的映射
+ * 有损的直接映射表，冲突时后写入的覆盖先写入的；读出的下标要与节点里保存的键核对，
+ * 所以多线程并发写入也不会拿到错误的节点。换到下一手时用它找到新局面在旧树中的节点，继续使用其子树
+ */
+final class TranspositionTable {
+    // 轮到白方时异或的随机数，区分落子方不同的相同局面
+    private static final long WHITE_TO_MOVE = 0x6A09E667F3BCC909L;
+
+    private final NodeStore store;
+    private final long[] keys;
+    private final int[] nodes;
+    private final int mask;
+
+    TranspositionTable(NodeStore store) {
+        this.store = store;
+        int slots = Integer.highestOneBit(Math.max(2, store.capacity() - 1)) << 1;
+        keys = new long[slots];
+        nodes = new int[slots];
+        mask = slots - 1;
+        clear();
+    }
+
+    /**
+     * 局面的置换表键
+     * @param hash 棋盘的Zobrist哈希
+     * @param color 轮到的一方
+     */
+    static long key(long hash, int color) {
+        return color == BitBoard.WHITE ? hash ^ WHITE_TO_MOVE : hash;
+    }
+
+    void put(long key, int node) {
+        int slot = index(key);
+        keys[slot] = key;
+        nodes[slot] = node;
+    }
+
+    /**
+     * 查找局面对应的节点，没有时返回NONE
+     */
+    int get(long key) {
+        int slot = index(key);
+        int node = nodes[slot];
+        if (keys[slot] != key || node == NodeStore.NONE || node >= store.size() || store.key(node) != key) {
+            return NodeStore.NONE;
+        }
+        return node;
+    }
+
+    void clear() {
+        Arrays.fill(nodes, NodeStore.NONE);
+    }
+
+    /**
+     * 节点仓库压缩后按新的下标重建
+     */
+    void rebuild() {
+        clear();
+        int size = store.size();
+        for (int n = 0; n < size; n++) {
+            put(store.key(n), n);
+        }
+    }
+
+    private int index(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
@@ -0,0 +1,159 @@
+package com.monki.search;
+
+import com.monki.core.BitBoard;
+import com.monki.core.BoardGeometry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 死活题求解器
+ * 每道题给出允许落子的区域、目标棋串和先走的一方，用df-pn搜索判断攻方能否吃掉目标。
+ * 每个线程有自己的搜索实例和置换表，置换表的内存和每道题的时间都有上限，多道题在线程池里并行求解
+ */
+public class TsumegoSolver {
+    public enum Result {
+        DEAD,//攻方能吃掉目标
+        ALIVE,//守方能活
+        UNKNOWN//时间用完还没有结果
+    }
+
+    public static final int MAX_REGION = 20;//自动划定区域时最多的空点数
+    private static final long DEFAULT_MEMORY = 16L << 20;//每个线程置换表的默认内存，16MB
+
+    /**
+     * 一道死活题
+     */
+    public static class Problem {
+        private final long[] region;//允许落子的区域
+        private final int target;//目标棋串中的一点
+        private final int toMove;//先走的一方
+
+        public Problem(long[] region, int target, int toMove) {
+            this.region = region;
+            this.target = target;
+            this.toMove = toMove;
+        }
+
+        public long[] getRegion() {
+            return region;
+        }
+
+        public int getTarget() {
+            return target;
+        }
+
+        public int getToMove() {
+            return toMove;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final long memoryBytes;
+    private final ThreadLocal<DfpnSearch> searches = new ThreadLocal<>();
+    private volatile long timeLimitMillis = 1000;//每道题的时间上限
+
+    public TsumegoSolver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads 并行求解的线程数
+     */
+    public TsumegoSolver(int threads) {
+        this(threads, DEFAULT_MEMORY);
+    }
+
+    /**
+     * @param threads 并行求解的线程数
+     * @param memoryBytes 每个线程置换表的内存上限
+     */
+    public TsumegoSolver(int threads, long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "tsumego-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 在当前线程求解一道题
+     * @param board 局面，不会被修改
+     */
+    public Result solve(BitBoard board, Problem problem) {
+        int result = search(board.getGeometry()).solve(board, problem.region, problem.target, problem.toMove, timeLimitMillis);
+        return result > 0 ? Result.DEAD : result < 0 ? Result.ALIVE : Result.UNKNOWN;
+    }
+
+    /**
+     * 并行求解多道题，结果与题目的顺序一致
+     * @param board 局面，不会被修改
+     */
+    public List<Result> solveAll(BitBoard board, List<Problem> problems) {
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Problem problem : problems) {
+            futures.add(pool.submit(() -> solve(board, problem)));
+        }
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(Result.UNKNOWN);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                results.add(Result.UNKNOWN);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 目标棋串所在的被围区域：从目标出发经过不是对方棋子的点能到达的所有点
+     * @return 区域的位集合，空点超过MAX_REGION（不是局部死活）时返回null
+     */
+    public static long[] enclosure(BitBoard board, int target) {
+        BoardGeometry geometry = board.getGeometry();
+        long[] passable = new long[geometry.words];
+        long[] attacker = board.plane(-board.get(target));
+        long[] onBoard = geometry.onBoard();
+        for (int w = 0; w < passable.length; w++) {
+            passable[w] = onBoard[w] & ~attacker[w];
+        }
+        long[] region = new long[geometry.words];
+        board.floodFill(target, passable, region);
+        long[] empty = board.getEmpty();
+        int count = 0;
+        for (int w = 0; w < region.length; w++) {
+            count += Long.bitCount(region[w] & empty[w]);
+        }
+        return count > MAX_REGION ? null : region;
+    }
+
+    //当前线程的搜索实例，路数变化时重建
+    private DfpnSearch search(BoardGeometry geometry) {
+        DfpnSearch search = searches.get();
+        if (search == null || search.getGeometry() != geometry) {
+            search = new DfpnSearch(geometry, memoryBytes);
+            searches.set(search);
+        }
+        return search;
+    }
+
+    public void setTimeLimit(long millis) {
+        this.timeLimitMillis = millis;
+    }
+
+    /**
+     * 关闭线程池
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -23,7 +23,7 @@ public class GoClient implements Runnable {
     private static final String SERVER_IP = Config.SERVER_ADDRESS;
     private static final int SERVER_PORT = Config.SERVER_PORT;
     
-    public static volatile Stone currentStone;
+    private volatile Stone currentStone;
     
     private Socket socket;
     private DataOutputStream dos;
@@ -486,8 +486,8 @@ public class GoClient implements Runnable {
                     final Stone localStone = new Stone(
                         netStone.count,
                         netStone.color.equals("BLACK") ? Color.BLACK : Color.WHITE,
-                        new Position(netStone.coordinate.i, netStone.coordinate.j),
-                        new Position(netStone.index.i, netStone.index.j)
+                        Position.of(netStone.coordinate.i, netStone.coordinate.j),
+                        Position.of(netStone.index.i, netStone.index.j)
                     );
                     
                     // 直接更新当前棋子，不做多余判断
@@ -496,11 +496,9 @@ public class GoClient implements Runnable {
                     // 使用Swing事件分发线程更新UI，避免等待
                     SwingUtilities.invokeLater(() -> {
                         try {
-                            // 确保在更新棋盘前设置lastStone
-                            MyPanel.lastStone = localStone;
-                            MyPanel.updateStone(localStone);
-                            // 仅当面板存在时重绘
+                            // 仅当面板存在时更新棋盘并重绘，最后一颗落子随对局状态一起更新
                             if (MyFrame.myPanel != null) {
+                                ((MyPanel) MyFrame.myPanel).updateStone(localStone);
                                 MyFrame.myPanel.repaint();
                             }
                         } catch (Exception e) {
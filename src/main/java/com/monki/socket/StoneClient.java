@@ -5,13 +5,14 @@ import com.monki.draw.MyPanel;
 import com.monki.entity.Stone;
 import com.monki.util.Config;
 
+import javax.swing.SwingUtilities;
 import java.awt.*;
 import java.io.*;
 import java.net.Socket;
 import java.net.UnknownHostException;
 
 public class StoneClient implements Runnable{
-    public static volatile Stone currentStone;
+    private volatile Stone currentStone;
     public static Boolean isCurrentTurn;
     private int port;
     private String ip;
@@ -36,7 +37,7 @@ public class StoneClient implements Runnable{
     public void run() {
         String host = ip; // 服务器地址
          // 服务器监听端口
-        //Stone test = new Stone(0, Color.BLACK, new Position(0, 0), new Position(0, 0));
+        //Stone test = new Stone(0, Color.BLACK, Position.of(0, 0), Position.of(0, 0));
 
         try (Socket socket = new Socket(host, port);
              ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
@@ -48,8 +49,11 @@ public class StoneClient implements Runnable{
                 //System.out.println("收到"+stone);
                 //break;
                 currentStone = stone;
-                MyPanel.updateStone(stone);
-                MyFrame.myPanel.repaint();
+                // 对局状态只在界面线程修改，交给事件分发线程落子并重绘
+                SwingUtilities.invokeLater(() -> {
+                    ((MyPanel) MyFrame.myPanel).updateStone(stone);
+                    MyFrame.myPanel.repaint();
+                });
 
 
                 //发送棋子
@@ -4,6 +4,7 @@ import com.monki.draw.MyPanel;
 import com.monki.entity.Position;
 import com.monki.entity.Stone;
 
+import javax.swing.SwingUtilities;
 import java.awt.*;
 import java.io.*;
 import java.net.ServerSocket;
@@ -14,7 +15,7 @@ import java.net.Socket;
 
 public class StoneServer implements Runnable{
     private int port;
-    public static volatile Stone currentStone;
+    private volatile Stone currentStone;
     public StoneServer(int listeningPort){
         this.port = listeningPort;
     }
@@ -33,7 +34,7 @@ public class StoneServer implements Runnable{
     @Override
     public void run() {
         //int port = 12345; // 服务器监听的端口
-        Stone test = new Stone(0, Color.BLACK, new Position(0, 0), new Position(0, 0));
+        Stone test = new Stone(0, Color.BLACK, Position.of(0, 0), Position.of(0, 0));
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             //等待连接建立
             System.out.println("服务器启动，等待连接...");
@@ -53,9 +54,13 @@ public class StoneServer implements Runnable{
                     sendStone(oos,currentStone);
                     System.out.println("等待客户端发送棋子...");
                     //接收棋子
-                    currentStone = receiveStone(ois);
-                    MyPanel.updateStone(currentStone);
-                    MyFrame.myPanel.repaint();
+                    Stone received = receiveStone(ois);
+                    currentStone = received;
+                    // 对局状态只在界面线程修改，交给事件分发线程落子并重绘
+                    SwingUtilities.invokeLater(() -> {
+                        ((MyPanel) MyFrame.myPanel).updateStone(received);
+                        MyFrame.myPanel.repaint();
+                    });
 
                 }
             } catch (ClassNotFoundException e) {
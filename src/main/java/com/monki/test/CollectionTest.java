@@ -9,11 +9,11 @@ public class CollectionTest {
         //重写hashcode方法
         HashSet<Position> set1 = new HashSet<>();
         HashSet<Position> set2 = new HashSet<>();
-        set1.add(new Position(1,1));
-        set1.add(new Position(1,1));
-        set1.add(new Position(1,3));
-        set2.add(new Position(1,2));
-        set2.add(new Position(2,3));
+        set1.add(Position.of(1,1));
+        set1.add(Position.of(1,1));
+        set1.add(Position.of(1,3));
+        set2.add(Position.of(1,2));
+        set2.add(Position.of(2,3));
         //set1.retainAll(set2);
         System.out.println(set1);
 
@@ -49,7 +49,7 @@ public class GoClient {
             // }
 
             // 示例：发送一个假定的棋子
-            Stone move = new Stone(1, Color.BLACK, new Position(3, 4), new Position(3, 4));
+            Stone move = new Stone(1, Color.BLACK, Position.of(3, 4), Position.of(3, 4));
             client.sendMove(move);
             Stone opponentsMove = client.receiveMove();
             System.out.println("Received opponent's move: " + opponentsMove);
@@ -0,0 +1,110 @@
+package com.monki.test;
+
+import com.monki.entity.Position;
+import com.monki.entity.Stone;
+import com.monki.search.SearchResult;
+import com.monki.util.Calculator;
+import com.monki.util.KataGoAnalysisClient;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用fake_katago_analysis.py模拟的分析引擎检查KataGoAnalysisClient，在项目根目录运行
+ * 模拟引擎和真正的KataGo一样只在启动时决定胜率的报告方式，配置文件按黑方报告，
+ * 客户端要靠启动命令覆盖才能得到正确的结果。
+ * 检查响应乱序到达时按id和手数归位、换算成白方为正，引擎退出时未完成的查询失败
+ */
+public class KataGoAnalysisClientTest {
+    private static final int SIZE = 19;
+
+    public static void main(String[] args) throws Exception {
+        String script = new File(args.length > 0 ? args[0] : "fake_katago_analysis.py").getAbsolutePath();
+        outOfOrderResponses(script);
+        engineExit(script);
+        System.out.println("KataGoAnalysisClient测试通过");
+    }
+
+    //多盘棋的查询一起写入，响应打乱顺序返回，每一手的结果仍然对应自己的局面
+    private static void outOfOrderResponses(String script) throws Exception {
+        KataGoAnalysisClient client = new KataGoAnalysisClient(script, "fake-model.bin.gz",
+                config("reportAnalysisWinratesAs = BLACK"));
+        client.start();
+        List<Stone> moves = moves(new int[][]{{4, 4}, {16, 16}, {3, 3}});
+        List<List<Stone>> games = Arrays.asList(moves, moves.subList(0, 1), moves);
+        List<CompletableFuture<List<SearchResult>>> futures = client.analyzeGames(games, SIZE, 10);
+        for (int g = 0; g < games.size(); g++) {
+            List<SearchResult> results = futures.get(g).get(5, TimeUnit.SECONDS);
+            check(results.size() == games.get(g).size() + 1, "第" + g + "盘的结果数");
+            for (int turn = 0; turn < results.size(); turn++) {
+                SearchResult result = results.get(turn);
+                // 模拟引擎的目差等于手数，黑先，单数手后轮到白方
+                double sign = turn % 2 == 1 ? 1 : -1;
+                check(result.getWhiteLead() == sign * turn, "第" + g + "盘第" + turn + "手的目差 " + result.getWhiteLead());
+                check(Math.abs(result.getWhiteWinrate() - (sign > 0 ? 0.6 : 0.4)) < 1e-9, "第" + turn + "手的胜率");
+                check(result.getOwnership()[1][1] == sign * 0.5, "第" + turn + "手的领地");
+                check(Position.of(4, 16).equals(result.getBestPosition()), "第" + turn + "手的最佳点");
+            }
+        }
+        client.stop();
+        expectFailure(client.analyzeGame(moves, SIZE, 10), "停止后的查询");
+    }
+
+    //引擎读到查询后直接退出，等待中的查询以IOException结束而不是一直挂起
+    private static void engineExit(String script) throws Exception {
+        KataGoAnalysisClient client = new KataGoAnalysisClient(script, "fake-model.bin.gz",
+                config("reportAnalysisWinratesAs = BLACK", "fakeExitAfter = 2"));
+        client.start();
+        List<Stone> moves = moves(new int[][]{{4, 4}});
+        List<SearchResult> first = client.analyzeGame(moves, SIZE, 10).get(5, TimeUnit.SECONDS);
+        check(first.size() == 2, "引擎退出前的查询");
+        expectFailure(client.analyzeGame(moves, SIZE, 10), "引擎退出时的查询");
+        client.stop();
+    }
+
+    //写一个临时的配置文件，格式与KataGo的cfg相同
+    private static String config(String... lines) throws IOException {
+        Path path = Files.createTempFile("analysis", ".cfg");
+        path.toFile().deleteOnExit();
+        Files.write(path, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return path.toString();
+    }
+
+    private static void expectFailure(CompletableFuture<List<SearchResult>> future, String what) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            check(e.getCause() instanceof IOException, what + "应以IOException失败：" + e.getCause());
+            return;
+        }
+        throw new IllegalStateException(what + "没有失败");
+    }
+
+    //按坐标（列，行）交替落黑白子
+    private static List<Stone> moves(int[][] points) {
+        List<Stone> moves = new ArrayList<>();
+        for (int k = 0; k < points.length; k++) {
+            Color color = k % 2 == 0 ? Color.BLACK : Color.WHITE;
+            int i = points[k][0];
+            int j = points[k][1];
+            moves.add(new Stone(k + 1, color, Calculator.getCoordinateViaIndex(i, j), Position.of(i, j)));
+        }
+        return moves;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("检查失败：" + what);
+        }
+    }
+}
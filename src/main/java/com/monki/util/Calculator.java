@@ -1,8 +1,19 @@
 package com.monki.util;
 
+import com.monki.core.BoardGeometry;
 import com.monki.entity.Position;
 
 public class Calculator {
+    // 交叉点索引对应的像素坐标，含边框外一圈，绘制时直接查表不再分配
+    private static final Position[][] COORDINATES = new Position[Config.PATH + 2][Config.PATH + 2];
+
+    static {
+        for (int i = 0; i < Config.PATH + 2; i++) {
+            for (int j = 0; j < Config.PATH + 2; j++) {
+                COORDINATES[i][j] = Position.of(Config.X + (i - 1) * Config.SPACE, Config.Y + (j - 1) * Config.SPACE);
+            }
+        }
+    }
 
     //通过鼠标指针坐标获得围棋落子坐标
     public static Position getIndexViaMouse(int mouseX, int mouseY){
@@ -10,14 +21,17 @@ public class Calculator {
         int i = (mouseX-Config.X+Config.SPACE/2)/Config.SPACE+1;
         //计算j
         int j = (mouseY-Config.Y+Config.SPACE/2)/Config.SPACE+1;
-        return new Position(i, j);
+        return Position.of(i, j);
     }
 
     //根据交叉点索引获得实际坐标
     public static Position getCoordinateViaIndex(int i, int j){
+        if (i >= 0 && i < COORDINATES.length && j >= 0 && j < COORDINATES.length) {
+            return COORDINATES[i][j];
+        }
         int posX = Config.X+(i-1)*Config.SPACE;
         int posY = Config.Y+(j-1)*Config.SPACE;
-        return new Position(posX,posY);
+        return Position.of(posX,posY);
 
     }
 
@@ -70,16 +84,51 @@ public class Calculator {
 
         return copy;
     }
+    //SGF坐标，支持到25路，超出范围返回empty
     public static String getAlphaIndex(Position index) {
-        for (int i = 1; i <= 19; i++) {
-            for (int j = 1; j <= 19; j++) {
-                if (index.getI() == i && index.getJ() == j) {
-                    return (char) ('a' + i - 1) +String.valueOf((char)('a'+j-1));
-                }
-            }
+        int i = index.getI();
+        int j = index.getJ();
+        if (i < 1 || i > BoardGeometry.MAX_SIZE || j < 1 || j > BoardGeometry.MAX_SIZE) {
+            return "empty";
+        }
+        return (char) ('a' + i - 1) + String.valueOf((char) ('a' + j - 1));
+    }
+
+    //GTP坐标，列用字母（跳过I），行从下往上数，如19路的左上角为A19
+    public static String getGtpVertex(Position index, int size) {
+        int i = index.getI();
+        int j = index.getJ();
+        if (i < 1 || i > size || j < 1 || j > size || size > BoardGeometry.MAX_SIZE) {
+            return "pass";
+        }
+        char column = (char) ('A' + i - 1);
+        if (column >= 'I') {
+            column++;
+        }
+        return column + String.valueOf(size - j + 1);
+    }
 
+    //把GTP坐标转回棋盘索引，虚手或无法识别时返回null
+    public static Position parseGtpVertex(String vertex, int size) {
+        if (vertex == null || vertex.length() < 2) {
+            return null;
+        }
+        char column = Character.toUpperCase(vertex.charAt(0));
+        if (column < 'A' || column > 'Z' || column == 'I') {
+            return null;
+        }
+        int i = column > 'I' ? column - 'A' : column - 'A' + 1;
+        int row;
+        try {
+            row = Integer.parseInt(vertex.substring(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int j = size - row + 1;
+        if (i < 1 || i > size || j < 1 || j > size) {
+            return null;
         }
-        return "empty";
+        return Position.of(i, j);
     }
 
 }
@@ -0,0 +1,367 @@
+package com.monki.util;
+
+import com.monki.core.BoardGeometry;
+import com.monki.entity.Position;
+import com.monki.entity.Stone;
+import com.monki.search.SearchResult;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KataGo分析引擎（katago analysis）客户端
+ * 与GTP模式不同，分析引擎按行收发JSON：每个查询带一个id，可以一次要求分析一盘棋的所有局面，
+ * 很多查询可以连续写入而不等待响应，引擎把它们的神经网络计算合批，响应按完成顺序返回，按id和手数归位。
+ * 复盘一盘棋只需要一个查询，而不是每个局面一次loadsgf加kata-raw-nn
+ */
+public class KataGoAnalysisClient {
+    private static final String KATAGO_PATH = "/home/monki/GitClones/katago-v1.16.0-eigen-linux-x64/katago";
+    private static final String MODEL_PATH = "/home/monki/Downloads/kata1-b28c512nbt-s8834891520-d4763401477.bin.gz";
+    private static final String CONFIG_PATH = "/home/monki/GitClones/katago-v1.16.0-eigen-linux-x64/analysis_example.cfg";
+
+    private final List<String> command;
+    private Process process;
+    private BufferedWriter input;
+    private Thread reader;
+    private final Map<String, GameQuery> pending = new ConcurrentHashMap<>();//还没收齐响应的查询
+    private final AtomicLong nextId = new AtomicLong();
+    private volatile double komi = 7.5;
+    private volatile String rules = "chinese";
+
+    /**
+     * 使用默认路径的KataGo和模型
+     */
+    public KataGoAnalysisClient() {
+        this(KATAGO_PATH, MODEL_PATH, CONFIG_PATH);
+    }
+
+    /**
+     * 胜率的报告方式只在启动时从配置读取，查询中无法修改；
+     * 配置文件可能按黑方报告，启动时覆盖为按轮到的一方，toResult据此换算
+     * @param katago KataGo可执行文件
+     * @param model 模型文件
+     * @param config 分析引擎的配置文件
+     */
+    public KataGoAnalysisClient(String katago, String model, String config) {
+        this(Arrays.asList(katago, "analysis", "-model", model, "-config", config,
+                "-override-config", "reportAnalysisWinratesAs=SIDETOMOVE"));
+    }
+
+    /**
+     * @param command 启动分析引擎的完整命令行，应让引擎按轮到的一方报告胜率
+     */
+    public KataGoAnalysisClient(List<String> command) {
+        this.command = new ArrayList<>(command);
+    }
+
+    /**
+     * 启动引擎进程和读取响应的后台线程
+     */
+    public void start() throws IOException {
+        File executable = new File(command.get(0));
+        if (command.get(0).equals(KATAGO_PATH) && !executable.exists()) {
+            throw new FileNotFoundException("KataGo可执行文件未找到: " + KATAGO_PATH);
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+        // 标准输出只有JSON响应，日志留在错误流
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process = pb.start();
+        input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        reader = new Thread(() -> readResponses(output), "katago-analysis-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public boolean isRunning() {
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * 分析一盘棋从空棋盘到最后一手的每个局面
+     * @param moves 按手数排列的所有落子，含已被提走的
+     * @param size 棋盘路数
+     * @param maxVisits 每个局面的搜索次数
+     * @return 完成后得到每个局面的结果，第n项是下完前n手的局面
+     */
+    public CompletableFuture<List<SearchResult>> analyzeGame(List<Stone> moves, int size, int maxVisits) {
+        return analyzeGames(Arrays.asList(moves), size, maxVisits).get(0);
+    }
+
+    /**
+     * 连续写入多盘棋的查询后一次刷新，不等待任何响应
+     * @return 与棋局顺序一致的结果，每项完成的先后不定
+     */
+    public List<CompletableFuture<List<SearchResult>>> analyzeGames(List<List<Stone>> games, int size, int maxVisits) {
+        List<CompletableFuture<List<SearchResult>>> futures = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (List<Stone> moves : games) {
+            Query query = new Query("q" + nextId.incrementAndGet(), moves, size, komi, rules, maxVisits);
+            GameQuery game = new GameQuery(size, moves.size() + 1);
+            pending.put(query.id, game);
+            futures.add(game.future);
+            lines.add(Config.GSON.toJson(query));
+        }
+        try {
+            synchronized (this) {
+                if (input == null) {
+                    IOException e = new IOException("KataGo分析引擎未启动");
+                    for (CompletableFuture<List<SearchResult>> future : futures) {
+                        future.completeExceptionally(e);
+                    }
+                    pending.values().removeIf(game -> game.future.isDone());
+                    return futures;
+                }
+                for (String line : lines) {
+                    input.write(line);
+                    input.write('\n');
+                }
+                input.flush();
+            }
+        } catch (IOException e) {
+            // 写入失败说明进程已不可用，所有查询都不会再有响应
+            failAll(e);
+        }
+        return futures;
+    }
+
+    //后台线程：逐行解析响应，按id找到查询，按手数放入结果
+    private void readResponses(BufferedReader output) {
+        try {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Response response;
+                try {
+                    response = Config.GSON.fromJson(line, Response.class);
+                } catch (RuntimeException e) {
+                    System.err.println("无法解析KataGo响应: " + line);
+                    continue;
+                }
+                handle(response);
+            }
+            failAll(new IOException("KataGo分析引擎已退出"));
+        } catch (IOException e) {
+            failAll(e);
+        }
+    }
+
+    private void handle(Response response) {
+        if (response == null || response.id == null) {
+            return;
+        }
+        GameQuery game = pending.get(response.id);
+        if (game == null) {
+            return;
+        }
+        if (response.error != null) {
+            pending.remove(response.id);
+            game.future.completeExceptionally(new IOException("KataGo查询出错: " + response.error));
+            return;
+        }
+        if (response.warning != null) {
+            System.err.println("KataGo查询警告: " + response.warning);
+        }
+        if (response.turnNumber == null || response.rootInfo == null || Boolean.TRUE.equals(response.isDuringSearch)) {
+            return;
+        }
+        if (game.add(response.turnNumber, toResult(response, game))) {
+            pending.remove(response.id);
+        }
+    }
+
+    /**
+     * 把一个局面的响应转为搜索结果
+     * 引擎启动时已覆盖为按轮到的一方报告胜率、目差和领地，按rootInfo中的currentPlayer换成白方为正
+     */
+    private static SearchResult toResult(Response response, GameQuery game) {
+        int size = game.size;
+        double sign = "W".equalsIgnoreCase(response.rootInfo.currentPlayer) ? 1 : -1;
+        double[][] ownership = new double[size + 2][size + 2];
+        if (response.ownership != null) {
+            for (int n = 0; n < size * size && n < response.ownership.length; n++) {
+                ownership[n / size + 1][n % size + 1] = sign * response.ownership[n];
+            }
+        }
+        double[][] distribution = new double[size + 2][size + 2];
+        Position bestPosition = null;
+        int bestOrder = Integer.MAX_VALUE;
+        int total = 0;
+        if (response.moveInfos != null) {
+            for (MoveInfo info : response.moveInfos) {
+                total += info.visits;
+            }
+            for (MoveInfo info : response.moveInfos) {
+                Position move = Calculator.parseGtpVertex(info.move, size);
+                if (move != null && total > 0) {
+                    distribution[move.getJ()][move.getI()] = (double) info.visits / total;
+                }
+                if (info.order < bestOrder) {
+                    bestOrder = info.order;
+                    bestPosition = move;
+                }
+            }
+        }
+        int best = bestPosition == null ? -1 : game.geometry.point(bestPosition.getJ(), bestPosition.getI());
+        double winrate = response.rootInfo.winrate;
+        double whiteWinrate = sign > 0 ? winrate : 1 - winrate;
+        return new SearchResult(best, bestPosition, whiteWinrate, sign * response.rootInfo.scoreLead,
+                ownership, distribution, response.rootInfo.visits, System.currentTimeMillis() - game.start);
+    }
+
+    //引擎出错或退出，所有没完成的查询都失败
+    private void failAll(IOException e) {
+        for (String id : pending.keySet()) {
+            GameQuery game = pending.remove(id);
+            if (game != null) {
+                game.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    public void setKomi(double komi) {
+        this.komi = komi;
+    }
+
+    /**
+     * @param rules KataGo的规则名，如chinese、japanese、tromp-taylor
+     */
+    public void setRules(String rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * 关闭输入让引擎处理完已有查询后退出，超时则强制结束
+     */
+    public void stop() {
+        try {
+            synchronized (this) {
+                if (input != null) {
+                    input.close();
+                    input = null;
+                }
+            }
+            if (process != null) {
+                process.waitFor(5, TimeUnit.SECONDS);
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * 一盘棋的查询：收齐每一手的响应后完成
+     */
+    private static class GameQuery {
+        private final int size;
+        private final BoardGeometry geometry;
+        private final SearchResult[] results;
+        private final CompletableFuture<List<SearchResult>> future = new CompletableFuture<>();
+        private final long start = System.currentTimeMillis();
+        private int remaining;
+
+        GameQuery(int size, int turns) {
+            this.size = size;
+            this.geometry = BoardGeometry.of(size);
+            this.results = new SearchResult[turns];
+            this.remaining = turns;
+        }
+
+        //记下一手的结果，收齐时返回true
+        synchronized boolean add(int turn, SearchResult result) {
+            if (turn < 0 || turn >= results.length || results[turn] != null) {
+                return false;
+            }
+            results[turn] = result;
+            if (--remaining > 0) {
+                return false;
+            }
+            future.complete(Arrays.asList(results));
+            return true;
+        }
+    }
+
+    /**
+     * 发给分析引擎的查询，字段名与KataGo的JSON协议一致
+     */
+    private static class Query {
+        private final String id;
+        private final String[][] moves;
+        private final String rules;
+        private final double komi;
+        private final int boardXSize;
+        private final int boardYSize;
+        private final int[] analyzeTurns;
+        private final boolean includeOwnership = true;
+        private final int maxVisits;
+
+        Query(String id, List<Stone> stones, int size, double komi, String rules, int maxVisits) {
+            this.id = id;
+            this.moves = new String[stones.size()][];
+            for (int k = 0; k < stones.size(); k++) {
+                Stone stone = stones.get(k);
+                String player = stone.getColor().equals(Color.BLACK) ? "B" : "W";
+                moves[k] = new String[]{player, Calculator.getGtpVertex(stone.getIndex(), size)};
+            }
+            this.rules = rules;
+            this.komi = komi;
+            this.boardXSize = size;
+            this.boardYSize = size;
+            this.analyzeTurns = new int[stones.size() + 1];
+            for (int k = 0; k < analyzeTurns.length; k++) {
+                analyzeTurns[k] = k;
+            }
+            this.maxVisits = maxVisits;
+        }
+    }
+
+    /**
+     * 分析引擎的响应，只取用到的字段
+     */
+    private static class Response {
+        private String id;
+        private String error;
+        private String warning;
+        private Integer turnNumber;
+        private Boolean isDuringSearch;
+        private MoveInfo[] moveInfos;
+        private RootInfo rootInfo;
+        private double[] ownership;
+    }
+
+    private static class MoveInfo {
+        private String move;
+        private int visits;
+        private int order;
+    }
+
+    private static class RootInfo {
+        private double winrate;
+        private double scoreLead;
+        private int visits;
+        private String currentPlayer;
+    }
+}
@@ -1,22 +1,41 @@
 package com.monki.util;
 
+import com.monki.core.BitBoard;
+import com.monki.core.BoardGeometry;
+import com.monki.entity.Position;
+import com.monki.search.SearchResult;
+
 /**
  * KataGo评估结果处理工具类
  */
 public class KataGoEvaluator {
-    private static final int BOARD_SIZE = 19;
-    
     /**
      * 解析KataGo的原始输出并设置到PositionEvaluator中
      * @param kataGoOutput KataGo的原始输出字符串
+     * @param evaluator 接收评估结果的对局形势判断
+     */
+    public static void processKataGoOutput(String kataGoOutput, PositionEvaluator evaluator) {
+        SearchResult result = parseRawOutput(kataGoOutput, evaluator.getBoardSize());
+        if (result != null) {
+            result.applyTo(evaluator);
+            System.out.println("成功设置KataGo评估结果");
+        }
+    }
+
+    /**
+     * 解析kata-raw-nn的原始输出：胜率、目差、领地和policy，都以白方为正
+     * 神经网络单次评估没有搜索，最佳点和访问次数留空，policy作为访问比例
+     * @param kataGoOutput KataGo的原始输出字符串
+     * @param boardSize 棋盘路数
+     * @return 输出为空或解析失败时返回null
      */
-    public static void processKataGoOutput(String kataGoOutput) {
+    public static SearchResult parseRawOutput(String kataGoOutput, int boardSize) {
         try {
             System.out.println("开始解析KataGo输出...");
             
             if (kataGoOutput == null || kataGoOutput.trim().isEmpty()) {
                 System.err.println("KataGo输出为空");
-                return;
+                return null;
             }
             
             // 输出原始数据的一部分，用于调试
@@ -32,13 +51,13 @@ public class KataGoEvaluator {
             double whiteLead = parseValue(kataGoOutput, "whiteLead");
             System.out.println("解析得到目差: " + whiteLead);
             
-            // 初始化矩阵
-            double[][] ownership = new double[BOARD_SIZE + 2][BOARD_SIZE + 2];
-            double[][] policy = new double[BOARD_SIZE + 2][BOARD_SIZE + 2];
+            // 初始化矩阵，大小与对局的路数一致
+            double[][] ownership = new double[boardSize + 2][boardSize + 2];
+            double[][] policy = new double[boardSize + 2][boardSize + 2];
             
             // 初始化为NaN以便于调试
-            for (int i = 0; i < BOARD_SIZE + 2; i++) {
-                for (int j = 0; j < BOARD_SIZE + 2; j++) {
+            for (int i = 0; i < boardSize + 2; i++) {
+                for (int j = 0; j < boardSize + 2; j++) {
                     ownership[i][j] = Double.NaN;
                     policy[i][j] = Double.NaN;
                 }
@@ -69,10 +88,10 @@ public class KataGoEvaluator {
                 }
                 
                 // 填充ownership矩阵
-                if (inOwnership && ownershipRow <= BOARD_SIZE) {
+                if (inOwnership && ownershipRow <= boardSize) {
                     String[] values = line.trim().split("\\s+");
-                    if (values.length >= BOARD_SIZE) {
-                        for (int col = 1; col <= BOARD_SIZE && col-1 < values.length; col++) {
+                    if (values.length >= boardSize) {
+                        for (int col = 1; col <= boardSize && col-1 < values.length; col++) {
                             if (!values[col-1].equalsIgnoreCase("NAN") && !values[col-1].isEmpty()) {
                                 try {
                                     ownership[ownershipRow][col] = Double.parseDouble(values[col-1]);
@@ -89,10 +108,10 @@ public class KataGoEvaluator {
                 }
                 
                 // 填充policy矩阵
-                if (inPolicy && policyRow <= BOARD_SIZE) {
+                if (inPolicy && policyRow <= boardSize) {
                     String[] values = line.trim().split("\\s+");
-                    if (values.length >= BOARD_SIZE) {
-                        for (int col = 1; col <= BOARD_SIZE && col-1 < values.length; col++) {
+                    if (values.length >= boardSize) {
+                        for (int col = 1; col <= boardSize && col-1 < values.length; col++) {
                             if (!values[col-1].equalsIgnoreCase("NAN") && !values[col-1].isEmpty()) {
                                 try {
                                     policy[policyRow][col] = Double.parseDouble(values[col-1]);
@@ -117,16 +136,121 @@ public class KataGoEvaluator {
                 System.err.println("警告：矩阵数据似乎不完整，请检查KataGo输出格式");
             }
             
-            // 设置评估结果
-            PositionEvaluator.setKataGoEvaluation(whiteWin, whiteLead, ownership, policy);
-            System.out.println("成功设置KataGo评估结果");
+            return new SearchResult(-1, null, whiteWin, whiteLead, ownership, policy, 0, 0);
             
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("解析KataGo输出失败：" + e.getMessage());
+            return null;
         }
     }
     
+    /**
+     * 解析kata-analyze输出的一行：每个候选点以info开头，带ownership时行尾是全盘的领地
+     * KataGo默认按轮到的一方报告胜率、目差和领地（reportAnalysisWinratesAs = SIDETOMOVE），这里统一换成白方为正
+     * @param line 以info开头的一行
+     * @param size 棋盘路数
+     * @param toMove 分析局面轮到的一方 -1黑 1白
+     * @param elapsedMillis 分析开始后经过的时间
+     * @return 访问次数最多的候选点的胜率和目差、各候选点的访问比例和领地，没有候选点时返回null
+     */
+    public static SearchResult parseAnalysis(String line, int size, int toMove, long elapsedMillis) {
+        String[] tokens = line.trim().split("\\s+");
+        BoardGeometry geometry = BoardGeometry.of(size);
+        double sign = toMove == BitBoard.WHITE ? 1 : -1;
+        double[][] ownership = new double[size + 2][size + 2];
+        double[][] distribution = new double[size + 2][size + 2];
+        int total = 0;
+        int bestOrder = Integer.MAX_VALUE;
+        Position bestPosition = null;
+        double bestWinrate = 0.5;
+        double bestLead = 0;
+        int k = 0;
+        while (k < tokens.length) {
+            String key = tokens[k++];
+            if (key.equals("ownership")) {
+                for (int n = 0; n < size * size && k < tokens.length; n++, k++) {
+                    ownership[n / size + 1][n % size + 1] = sign * parseDouble(tokens[k]);
+                }
+            } else if (key.equals("info")) {
+                // 读一个候选点的字段，直到下一个info或ownership
+                Position move = null;
+                int visits = 0;
+                int order = Integer.MAX_VALUE;
+                double winrate = 0.5;
+                double lead = 0;
+                while (k + 1 < tokens.length && !tokens[k].equals("info") && !tokens[k].equals("ownership")) {
+                    String field = tokens[k++];
+                    switch (field) {
+                        case "move":
+                            move = Calculator.parseGtpVertex(tokens[k++], size);
+                            break;
+                        case "visits":
+                            visits = (int) parseDouble(tokens[k++]);
+                            break;
+                        case "order":
+                            order = (int) parseDouble(tokens[k++]);
+                            break;
+                        case "winrate":
+                            winrate = parseDouble(tokens[k++]);
+                            break;
+                        case "scoreLead":
+                            lead = parseDouble(tokens[k++]);
+                            break;
+                        case "pv":
+                        case "pvVisits":
+                        case "pvEdgeVisits":
+                            // 变化图是不定长的列表，跳到下一个关键字
+                            while (k < tokens.length && !isListEnd(tokens[k])) {
+                                k++;
+                            }
+                            break;
+                        default:
+                            k++;
+                            break;
+                    }
+                }
+                if (move != null) {
+                    distribution[move.getJ()][move.getI()] += visits;
+                }
+                total += visits;
+                if (order < bestOrder) {
+                    bestOrder = order;
+                    bestPosition = move;
+                    bestWinrate = winrate;
+                    bestLead = lead;
+                }
+            }
+        }
+        if (bestOrder == Integer.MAX_VALUE) {
+            return null;
+        }
+        if (total > 0) {
+            for (int i = 1; i <= size; i++) {
+                for (int j = 1; j <= size; j++) {
+                    distribution[i][j] /= total;
+                }
+            }
+        }
+        int best = bestPosition == null ? -1 : geometry.point(bestPosition.getJ(), bestPosition.getI());
+        double whiteWinrate = toMove == BitBoard.WHITE ? bestWinrate : 1 - bestWinrate;
+        return new SearchResult(best, bestPosition, whiteWinrate, sign * bestLead,
+                ownership, distribution, total, elapsedMillis);
+    }
+
+    private static boolean isListEnd(String token) {
+        return token.equals("info") || token.equals("ownership") || token.equals("pvVisits")
+                || token.equals("pvEdgeVisits") || token.equals("ownershipStdev") || token.equals("movesOwnership");
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+
     /**
      * 从KataGo输出中解析特定值
      */
@@ -0,0 +1,286 @@
+package com.monki.util;
+
+import com.monki.core.BoardSnapshot;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 多个KataGo进程组成的池
+ * 每个进程同一时刻只处理一个请求，请求排队后交给空闲的进程；调度线程数与进程数相同，所以有空闲进程时请求立即开始。
+ * 后台巡检线程定期检查：处理一个请求或重新启动超时的进程被强制结束，空闲进程已退出的交给重启线程重新启动，
+ * 请求因进程崩溃失败时重启进程再试一次。排队数、忙碌数、完成数等指标可以随时读取
+ */
+public class KataGoPool {
+    private static final long CHECK_INTERVAL_MILLIS = 1000;//巡检间隔
+
+    private final Supplier<KataGoRunner> factory;
+    private final Worker[] workers;
+    private final BlockingQueue<Worker> idle;
+    private final ThreadPoolExecutor dispatcher;
+    private final ScheduledExecutorService watchdog;
+    private final ExecutorService restarter;//重启空闲进程，启动卡住时不影响巡检
+    private volatile long timeoutMillis = 30000;//单个请求的时间上限，超过则认为进程卡住
+
+    // 指标
+    private final AtomicInteger busy = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * @param size 进程数
+     */
+    public KataGoPool(int size) {
+        this(size, KataGoRunner::new);
+    }
+
+    /**
+     * @param size 进程数
+     * @param factory 创建还没启动的运行器
+     */
+    public KataGoPool(int size, Supplier<KataGoRunner> factory) {
+        this.factory = factory;
+        int n = Math.max(1, size);
+        workers = new Worker[n];
+        idle = new ArrayBlockingQueue<>(n);
+        for (int k = 0; k < n; k++) {
+            workers[k] = new Worker(k);
+        }
+        dispatcher = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "katago-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "katago-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        restarter = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "katago-restarter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 启动所有进程和巡检线程，启动失败的进程在第一次使用时重试
+     * @throws IOException 一个进程都没有启动成功
+     */
+    public void start() throws IOException {
+        int started = 0;
+        for (Worker worker : workers) {
+            if (worker.start()) {
+                started++;
+            }
+            idle.add(worker);
+        }
+        if (started == 0) {
+            throw new IOException("KataGo进程全部启动失败");
+        }
+        watchdog.scheduleWithFixedDelay(this::check, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交一个局面的kata-raw-nn评估，由空闲的进程处理
+     * @return 完成后得到KataGo的原始输出；进程重启后仍然失败时以IOException结束
+     */
+    public CompletableFuture<String> analyze(BoardSnapshot snapshot) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        dispatcher.execute(() -> {
+            try {
+                future.complete(run(snapshot));
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                future.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    //取一个空闲进程执行请求，进程出错时重启并重试一次
+    private String run(BoardSnapshot snapshot) throws IOException, InterruptedException {
+        Worker worker = idle.take();
+        busy.incrementAndGet();
+        try {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                // 重启也计时，启动时卡住的进程同样会被巡检结束
+                worker.busySince = System.currentTimeMillis();
+                if (!worker.runner.isRunning()) {
+                    worker.restart();
+                    worker.busySince = System.currentTimeMillis();
+                }
+                String result = worker.runner.analyze(snapshot);
+                worker.busySince = 0;
+                if (result != null && !result.trim().isEmpty() && worker.runner.isRunning()) {
+                    completed.incrementAndGet();
+                    return result;
+                }
+                // 进程崩溃或被巡检结束，重启后重试
+                worker.busySince = System.currentTimeMillis();
+                worker.restart();
+            }
+            throw new IOException("KataGo进程" + worker.index + "分析失败");
+        } finally {
+            worker.busySince = 0;
+            busy.decrementAndGet();
+            idle.put(worker);
+        }
+    }
+
+    //巡检：结束卡住的进程，已退出的空闲进程交给重启线程，巡检线程自己不等待进程启动
+    private void check() {
+        long now = System.currentTimeMillis();
+        for (Worker worker : workers) {
+            long since = worker.busySince;
+            if (since > 0 && now - since > timeoutMillis) {
+                System.err.println("KataGo进程" + worker.index + "超时，强制结束");
+                timeouts.incrementAndGet();
+                // 重新计时而不是清零：结束时恰好换了运行器的话，新进程再卡住也会被结束
+                worker.busySince = now;
+                worker.runner.kill();
+            }
+        }
+        // 逐个检查空闲进程，重启期间它不接受请求
+        for (int k = idle.size(); k > 0; k--) {
+            Worker worker = idle.poll();
+            if (worker == null) {
+                break;
+            }
+            if (worker.runner.isRunning()) {
+                idle.add(worker);
+                continue;
+            }
+            worker.busySince = System.currentTimeMillis();
+            try {
+                restarter.execute(() -> {
+                    try {
+                        worker.restart();
+                    } finally {
+                        worker.busySince = 0;
+                        idle.add(worker);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 已经关闭
+                worker.busySince = 0;
+                idle.add(worker);
+            }
+        }
+    }
+
+    public void setTimeout(long millis) {
+        this.timeoutMillis = millis;
+    }
+
+    public int getSize() {
+        return workers.length;
+    }
+
+    /**
+     * 排队等待空闲进程的请求数
+     */
+    public int getQueueDepth() {
+        return dispatcher.getQueue().size();
+    }
+
+    /**
+     * 正在处理请求的进程数
+     */
+    public int getBusyWorkers() {
+        return busy.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * 停止调度和巡检，结束所有进程，排队的请求被取消
+     */
+    public void shutdown() {
+        watchdog.shutdownNow();
+        restarter.shutdownNow();
+        dispatcher.shutdownNow();
+        for (Worker worker : workers) {
+            worker.runner.kill();
+            worker.runner.stopKataGo();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "KataGo池{进程=" + workers.length +
+                " 排队=" + getQueueDepth() +
+                " 忙碌=" + getBusyWorkers() +
+                " 完成=" + getCompleted() +
+                " 失败=" + getFailed() +
+                " 重启=" + getRestarts() +
+                " 超时=" + getTimeouts() +
+                '}';
+    }
+
+    /**
+     * 池中的一个进程，同一时刻只在一个调度线程或重启线程手里
+     */
+    private class Worker {
+        private final int index;
+        private volatile KataGoRunner runner;
+        private volatile long busySince;//开始处理当前请求或重启的时间，空闲时为0
+
+        Worker(int index) {
+            this.index = index;
+            this.runner = factory.get();
+        }
+
+        boolean start() {
+            try {
+                runner.startKataGo();
+                return true;
+            } catch (IOException e) {
+                System.err.println("KataGo进程" + index + "启动失败：" + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        //结束旧进程，换一个新的运行器重新启动
+        void restart() {
+            restarts.incrementAndGet();
+            runner.kill();
+            runner.stopKataGo();
+            runner = factory.get();
+            start();
+        }
+    }
+}
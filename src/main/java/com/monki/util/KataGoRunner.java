@@ -1,13 +1,31 @@
 package com.monki.util;
 
+import com.monki.core.BitBoard;
+import com.monki.core.BoardSnapshot;
+import com.monki.entity.MoveRecord;
+import com.monki.search.SearchResult;
+
+import java.awt.Color;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * KataGo运行器
- * 负责与KataGo进程交互
+ * 负责与KataGo进程交互。引擎的棋盘与对局增量同步：记下已经发给引擎的落子，
+ * 每次分析只悔掉不一致的部分、再下新的棋，不写临时SGF文件。
+ * 持续分析时由后台线程读取kata-analyze不断输出的结果交给监听器，调用方不会被阻塞；
+ * 发送任何其他命令之前先结束持续分析
  */
 public class KataGoRunner {
+    /**
+     * 持续分析的监听器，在读取输出的后台线程中调用，每次得到的结果比上一次搜索得更深
+     */
+    public interface AnalysisListener {
+        void onAnalysis(SearchResult result);
+    }
+    
     private Process kataGoProcess;
     private BufferedWriter kataGoInput;
     private BufferedReader kataGoOutput;
@@ -15,6 +33,12 @@ public class KataGoRunner {
     private static final String MODEL_PATH = "/home/monki/Downloads/kata1-b28c512nbt-s8834891520-d4763401477.bin.gz";
     private static final String CONFIG_PATH = "/home/monki/GitClones/katago-v1.16.0-eigen-linux-x64/default_gtp.cfg";
     
+    // 引擎棋盘上已经下过的棋，GTP格式如"B Q16"
+    private final List<String> syncedMoves = new ArrayList<>();
+    private int syncedSize = -1;//引擎棋盘的路数，-1表示引擎棋盘的状态未知，需要清空后重新摆
+    
+    private Thread analysisReader;//读取kata-analyze输出的线程，没有持续分析时为null
+    
     public void startKataGo() throws IOException, InterruptedException {
         // 确保KataGo和模型文件存在
         File katagoFile = new File(KATAGO_PATH);
@@ -61,7 +85,9 @@ public class KataGoRunner {
         }
     }
     
-    public void stopKataGo() {
+    public synchronized void stopKataGo() {
+        // quit同样会结束持续分析，读取线程在输出关闭后退出
+        analysisReader = null;
         try {
             if (kataGoInput != null) {
                 kataGoInput.write("quit\n");
@@ -83,8 +109,28 @@ public class KataGoRunner {
         }
     }
     
-    public String analyzeSgf(String sgfPath) {
+    /**
+     * 强制结束进程，不等待正在执行的命令，用于处理卡住的引擎
+     * 不加锁，阻塞在读取输出上的调用会因为输出关闭而返回
+     */
+    public void kill() {
+        Process process = kataGoProcess;
+        if (process != null) {
+            process.destroyForcibly();
+        }
+    }
+    
+    /**
+     * KataGo进程是否已启动且仍在运行
+     */
+    public boolean isRunning() {
+        return kataGoProcess != null && kataGoProcess.isAlive();
+    }
+    
+    public synchronized String analyzeSgf(String sgfPath) {
         try {
+            stopAnalysis();
+
             // 确保SGF文件存在
             File sgfFile = new File(sgfPath);
             if (!sgfFile.exists()) {
@@ -92,7 +138,8 @@ public class KataGoRunner {
                 return null;
             }
             
-            // 加载SGF文件
+            // 加载SGF文件，之后引擎棋盘与增量同步的记录不再一致
+            syncedSize = -1;
             String loadResponse = sendCommand("loadsgf " + sgfPath);
             if (loadResponse == null || loadResponse.toLowerCase().contains("error")) {
                 System.err.println("加载SGF文件失败: " + loadResponse);
@@ -111,11 +158,222 @@ public class KataGoRunner {
         }
     }
     
+    /**
+     * 分析对局快照中的局面：先把引擎棋盘同步到快照的落子序列，再用kata-raw-nn评估
+     * @return KataGo的原始输出，同步或评估失败、输出不完整时返回null
+     */
+    public synchronized String analyze(BoardSnapshot snapshot) {
+        try {
+            stopAnalysis();
+            if (!sync(snapshot.getSize(), toGtpMoves(snapshot))) {
+                System.err.println("KataGo棋盘同步失败");
+                return null;
+            }
+            String response = sendCommand("kata-raw-nn 0");
+            if (!isCompleteRawOutput(response, snapshot.getSize())) {
+                // 进程在输出途中被结束或退出，残缺的结果不能当作评估
+                System.err.println("KataGo的kata-raw-nn输出不完整");
+                syncedSize = -1;
+                return null;
+            }
+            return response;
+        } catch (IOException e) {
+            e.printStackTrace();
+            syncedSize = -1;
+            return null;
+        }
+    }
+    
+    /**
+     * 开始持续分析快照中的局面：同步引擎棋盘后发送kata-analyze，立即返回，
+     * 后台线程每隔interval解析一次输出并通知监听器，直到stopAnalysis或下一次分析开始
+     * @param interval 输出间隔，单位为百分之一秒
+     * @return 同步或发送失败时返回false
+     */
+    public synchronized boolean startAnalysis(BoardSnapshot snapshot, int interval, AnalysisListener listener) {
+        try {
+            stopAnalysis();
+            if (!sync(snapshot.getSize(), toGtpMoves(snapshot))) {
+                System.err.println("KataGo棋盘同步失败");
+                return false;
+            }
+            String color = snapshot.getTurn() == BitBoard.BLACK ? "B" : "W";
+            kataGoInput.write("kata-analyze " + color + " " + interval + " ownership true\n");
+            kataGoInput.flush();
+            long start = System.currentTimeMillis();
+            analysisReader = new Thread(() -> readAnalysis(snapshot, start, listener), "katago-analysis");
+            analysisReader.setDaemon(true);
+            analysisReader.start();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            syncedSize = -1;
+            return false;
+        }
+    }
+    
+    /**
+     * 结束持续分析，等读取线程读完剩余的输出后返回；没有持续分析时什么也不做
+     * 引擎超时仍未结束分析时强制结束进程，之后isRunning返回false，需要重新启动
+     */
+    public synchronized void stopAnalysis() {
+        if (analysisReader == null) {
+            return;
+        }
+        Thread reader = analysisReader;
+        analysisReader = null;
+        try {
+            // 任何命令都会结束kata-analyze，输出以空行结束，之后才是这条命令的响应
+            kataGoInput.write("protocol_version\n");
+            kataGoInput.flush();
+            reader.join(5000);
+            if (reader.isAlive()) {
+                // 读取线程还占着输出，继续使用的话之后的命令会读到残留的info行，只能结束进程
+                System.err.println("KataGo没有结束持续分析，强制结束进程");
+                syncedSize = -1;
+                kill();
+                kataGoProcess.waitFor(1, TimeUnit.SECONDS);
+                reader.join(1000);
+                return;
+            }
+            readResponse();
+        } catch (IOException e) {
+            e.printStackTrace();
+            syncedSize = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    //后台线程：逐行解析kata-analyze的输出，读到结束的空行为止
+    private void readAnalysis(BoardSnapshot snapshot, long start, AnalysisListener listener) {
+        try {
+            String line;
+            while ((line = kataGoOutput.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    return;
+                }
+                if (!line.startsWith("info")) {
+                    continue;
+                }
+                SearchResult result = KataGoEvaluator.parseAnalysis(line, snapshot.getSize(), snapshot.getTurn(),
+                        System.currentTimeMillis() - start);
+                if (result != null) {
+                    listener.onAnalysis(result);
+                }
+            }
+        } catch (IOException e) {
+            // 进程退出或输出被关闭
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * 把引擎棋盘同步到给定的落子序列
+     * 与已同步的序列比较公共前缀，多出的棋用undo悔掉，缺少的棋用play补上；
+     * 路数不同、需要悔的棋比重新摆还多或者悔棋失败时，清空棋盘后重新摆
+     */
+    private boolean sync(int size, List<String> moves) throws IOException {
+        int common = 0;
+        if (size == syncedSize) {
+            while (common < moves.size() && common < syncedMoves.size()
+                    && moves.get(common).equals(syncedMoves.get(common))) {
+                common++;
+            }
+        }
+        int undos = syncedMoves.size() - common;
+        if (size != syncedSize || undos > moves.size()) {
+            if (!reset(size)) {
+                return false;
+            }
+            common = 0;
+        } else {
+            for (int k = 0; k < undos; k++) {
+                if (!isSuccess(sendCommand("undo"))) {
+                    if (!reset(size)) {
+                        return false;
+                    }
+                    common = 0;
+                    break;
+                }
+                syncedMoves.remove(syncedMoves.size() - 1);
+            }
+        }
+        for (int k = common; k < moves.size(); k++) {
+            String move = moves.get(k);
+            if (!isSuccess(sendCommand("play " + move))) {
+                System.err.println("KataGo拒绝落子: " + move);
+                syncedSize = -1;
+                return false;
+            }
+            syncedMoves.add(move);
+        }
+        return true;
+    }
+    
+    //设置路数并清空引擎棋盘
+    private boolean reset(int size) throws IOException {
+        syncedMoves.clear();
+        syncedSize = -1;
+        if (!isSuccess(sendCommand("boardsize " + size)) || !isSuccess(sendCommand("clear_board"))) {
+            return false;
+        }
+        syncedSize = size;
+        return true;
+    }
+    
+    //快照中的所有落子转为GTP格式，被提走的棋子也是实际下过的棋
+    private static List<String> toGtpMoves(BoardSnapshot snapshot) {
+        List<String> moves = new ArrayList<>();
+        for (MoveRecord stone : snapshot.getMoves()) {
+            String color = stone.getColor().equals(Color.BLACK) ? "B " : "W ";
+            moves.add(color + Calculator.getGtpVertex(stone.getIndex(), snapshot.getSize()));
+        }
+        return moves;
+    }
+    
+    //GTP成功的响应以"="开头，失败以"?"开头
+    private static boolean isSuccess(String response) {
+        return response != null && response.startsWith("=");
+    }
+    
+    //kata-raw-nn的输出是否完整：成功的响应，有胜率和目差，policy和whiteOwnership各有size行、每行size个数
+    private static boolean isCompleteRawOutput(String response, int size) {
+        if (!isSuccess(response) || !response.contains("whiteWin") || !response.contains("whiteLead")) {
+            return false;
+        }
+        return hasRows(response, "policy", size) && hasRows(response, "whiteOwnership", size);
+    }
+    
+    private static boolean hasRows(String response, String header, int size) {
+        String[] lines = response.split("\\n");
+        for (int k = 0; k < lines.length; k++) {
+            if (!lines[k].trim().equals(header)) {
+                continue;
+            }
+            if (k + size >= lines.length) {
+                return false;
+            }
+            for (int row = 1; row <= size; row++) {
+                if (lines[k + row].trim().split("\\s+").length != size) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
     private String sendCommand(String command) throws IOException {
         // 发送命令
         kataGoInput.write(command + "\n");
         kataGoInput.flush();
-        
+        return readResponse();
+    }
+    
+    //读取一条命令的响应，直到遇到空行
+    private String readResponse() throws IOException {
         StringBuilder response = new StringBuilder();
         String line;
         
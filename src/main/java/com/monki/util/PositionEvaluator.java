@@ -1,9 +1,14 @@
 package com.monki.util;
 
-import com.monki.core.Board;
+import com.monki.core.AreaScorer;
+import com.monki.core.Benson;
+import com.monki.core.BitBoard;
+import com.monki.core.BoardSnapshot;
+import com.monki.core.GameState;
+import com.monki.core.Ladder;
 import com.monki.entity.Position;
-import com.monki.entity.Stone;
 import com.monki.core.StoneString;
+import com.monki.search.TsumegoSolver;
 
 import java.awt.Color;
 import java.util.ArrayList;
@@ -17,7 +22,8 @@ import java.util.Set;
 
 /**
  * 形势判断工具类
- * 整合KataGo的评估结果
+ * 整合KataGo的评估结果，每个实例对应一盘棋。
+ * 判断时读取对局发布的不可变快照，在自己的棋盘副本上计算，不受其他线程落子的影响
  */
 public class PositionEvaluator {
     // 棋盘状态常量
@@ -25,26 +31,29 @@ public class PositionEvaluator {
     private static final int BLACK = -1;
     private static final int WHITE = 1;
     
-    // 棋盘大小
-    private static final int BOARD_SIZE = 19;
+    // 棋盘大小，与对局的路数一致
+    private final int boardSize;
     
     // KataGo评估结果
-    private static double whiteWinrate = 0.0;
-    private static double whiteLead = 0.0;
-    private static double[][] ownership = new double[BOARD_SIZE + 2][BOARD_SIZE + 2];
-    private static double[][] policy = new double[BOARD_SIZE + 2][BOARD_SIZE + 2];
+    private double whiteWinrate = 0.0;
+    private double whiteLead = 0.0;
+    private double[][] ownership;
+    private double[][] policy;
     
     // 每个点的领地属性：-100到100之间的值，负值表示黑方领地，正值表示白方领地，绝对值表示强度
-    private static int[][] territoryMap = new int[BOARD_SIZE + 2][BOARD_SIZE + 2];
+    private int[][] territoryMap;
     
     // 死子标记
-    private static boolean[][] deadStones = new boolean[BOARD_SIZE + 2][BOARD_SIZE + 2];
+    private boolean[][] deadStones;
+    private final long[] deadMask;//死子的位集合，供计分使用
     
     // 计算结果
-    private static int blackTerritory = 0;
-    private static int whiteTerritory = 0;
-    private static int blackCaptures = 0;
-    private static int whiteCaptures = 0;
+    private int blackTerritory = 0;
+    private int whiteTerritory = 0;
+    private int blackCaptures = 0;
+    private int whiteCaptures = 0;
+    private int blackArea = 0;
+    private int whiteArea = 0;
     
     // 影响力衰减率
     private static final double INFLUENCE_DECAY = 0.75;  // 增大衰减率，提高精确度
@@ -52,33 +61,100 @@ public class PositionEvaluator {
     // 贴目数（中国规则通常为3.75目）
     private static final double KOMI = 3.75;
     
+    private final GameState game;
+    
+    // 最近一次形势判断的局面，由快照重建
+    private BitBoard board;
+    private int turn;
+    
+    // 征子计算，结果按局面缓存
+    private final Ladder ladder;
+    
+    // 数子法计分
+    private final AreaScorer scorer;
+    
+    // 无条件死活，按局面缓存
+    private final Benson benson;
+    
+    // 局部死活求解，所有对局共用一个线程池
+    private static final TsumegoSolver SOLVER = new TsumegoSolver();
+    private static final long TSUMEGO_MILLIS = 300;//每块棋的求解时间上限
+    
+    // 被死活搜索证明已死的棋子，与局面有关、与引擎结果无关，由后台线程求解后整体替换
+    private volatile Proof proof;
+    private final Benson solverBenson;//求解线程专用，与界面线程的判断互不干扰
+    private long[] provenDead;//本次判断采用的证明结果，局面未求解时为null
+    
+    // 最佳落子点的缓存，评估结果或棋盘变化后才重新扫描
+    private Position bestMove;
+    private long bestMoveHash;
+    private boolean bestMoveValid = false;
+    
+    // 最近一次形势判断时的棋盘哈希
+    private long evaluatedHash;
+    private boolean evaluated = false;
+    
+    public PositionEvaluator(GameState game) {
+        this.game = game;
+        this.boardSize = game.getSize();
+        this.ladder = new Ladder(game.getBoard().getGeometry());
+        this.scorer = new AreaScorer(game.getBoard().getGeometry());
+        this.benson = new Benson(game.getBoard().getGeometry());
+        deadMask = new long[game.getBoard().getGeometry().words];
+        this.solverBenson = new Benson(game.getBoard().getGeometry());
+        ownership = new double[boardSize + 2][boardSize + 2];
+        policy = new double[boardSize + 2][boardSize + 2];
+        territoryMap = new int[boardSize + 2][boardSize + 2];
+        deadStones = new boolean[boardSize + 2][boardSize + 2];
+    }
+    
+    public int getBoardSize() {
+        return boardSize;
+    }
+    
     /**
      * 设置KataGo的评估结果
      */
-    public static void setKataGoEvaluation(double winrate, double lead, double[][] ownerships, double[][] policies) {
+    public void setKataGoEvaluation(double winrate, double lead, double[][] ownerships, double[][] policies) {
         whiteWinrate = winrate;
         whiteLead = lead;
         ownership = ownerships;
         policy = policies;
+        bestMoveValid = false;
     }
     
     /**
      * 评估当前局面
      * @return 返回一个包含各种评估信息的Map
      */
-    public static Map<String, Object> evaluatePosition() {
-        // 初始化数据
+    public Map<String, Object> evaluatePosition() {
+        BoardSnapshot snapshot = game.getSnapshot();
+        board = snapshot.toBitBoard();
+        turn = snapshot.getTurn();
+        
+        // 初始化数据，提子数从对局实际提掉的子开始，再加上判断出的死子
         resetData();
+        blackCaptures = snapshot.getPrisoners(BLACK);
+        whiteCaptures = snapshot.getPrisoners(WHITE);
         
         // 1. 检测死子
         detectDeadStones();
         
-        // 2. 确定领地归属（使用KataGo的ownership）
-        determineTerritoriesFromKataGo();
+        // 2. 去掉死子后数子，确定领地归属
+        determineTerritories();
         
         // 3. 计算最终得分
         calculateScore();
         
+        // 全盘已定型时数子结果就是终局结果
+        if (benson.isSettled()) {
+            whiteLead = whiteArea + 2 * KOMI - blackArea;
+            whiteWinrate = whiteLead > 0 ? 1.0 : 0.0;
+        }
+        
+        evaluatedHash = board.getHash();
+        evaluated = true;
+        
         // 封装结果
         Map<String, Object> result = new HashMap<>();
         result.put("territoryMap", territoryMap);
@@ -87,24 +163,31 @@ public class PositionEvaluator {
         result.put("whiteTerritory", whiteTerritory);
         result.put("blackCaptures", blackCaptures);
         result.put("whiteCaptures", whiteCaptures);
+        result.put("blackArea", blackArea);
+        result.put("whiteArea", whiteArea);
         result.put("whiteWinrate", whiteWinrate);
         result.put("whiteLead", whiteLead);
         result.put("policy", policy);
         
-        // 计算考虑贴目的得分差
-        double scoreDiff = blackTerritory + blackCaptures - (whiteTerritory + whiteCaptures + KOMI);
+        // 计算考虑贴目的得分差，数子法的子数差是目数差，贴3.75子即7.5目
+        double scoreDiff = blackArea - whiteArea - 2 * KOMI;
         result.put("scoreDiff", scoreDiff);
         
+        // 数目法（日本规则）：地加提子和死子，贴目同样是7.5目
+        double territoryDiff = blackTerritory + blackCaptures - whiteTerritory - whiteCaptures - 2 * KOMI;
+        result.put("territoryDiff", territoryDiff);
+        
         return result;
     }
     
     /**
      * 重置数据结构
      */
-    private static void resetData() {
-        territoryMap = new int[BOARD_SIZE + 2][BOARD_SIZE + 2];
+    private void resetData() {
+        territoryMap = new int[boardSize + 2][boardSize + 2];
 
-        deadStones = new boolean[BOARD_SIZE + 2][BOARD_SIZE + 2];
+        deadStones = new boolean[boardSize + 2][boardSize + 2];
+        BitBoard.clear(deadMask);
         blackTerritory = 0;
         whiteTerritory = 0;
         blackCaptures = 0;
@@ -113,37 +196,125 @@ public class PositionEvaluator {
     
     /**
      * 检测死子
-     * 使用KataGo的ownership来辅助判断死子
+     * 先用Benson算法确定无条件的死活，再采用后台死活搜索对当前局面的结论，
+     * 其余棋串使用KataGo的ownership来辅助判断，并把逃不出征子的棋串算作死子
      */
-    private static void detectDeadStones() {
+    private void detectDeadStones() {
+        benson.compute(board);
+        Proof current = proof;
+        provenDead = current != null && current.hash == board.getHash() ? current.dead : null;
+        
         // 检查黑子棋串
-        for (StoneString string : Board.blackString) {
-            if (isLikelyDeadByKataGo(string, BLACK)) {
+        for (StoneString string : board.getStrings(BLACK)) {
+            if (isDead(string, BLACK)) {
                 markStringAsDead(string);
-                whiteCaptures += string.getStones().size();
+                whiteCaptures += string.size();
             }
         }
         
         // 检查白子棋串
-        for (StoneString string : Board.whiteString) {
-            if (isLikelyDeadByKataGo(string, WHITE)) {
+        for (StoneString string : board.getStrings(WHITE)) {
+            if (isDead(string, WHITE)) {
                 markStringAsDead(string);
-                blackCaptures += string.getStones().size();
+                blackCaptures += string.size();
+            }
+        }
+    }
+    
+    /**
+     * 判断棋串是否已死，无条件活的棋串一定不死，在对方无条件的地里的棋串一定死
+     */
+    private boolean isDead(StoneString string, int color) {
+        int point = string.getPoints()[0];
+        if (benson.isPassAlive(point)) {
+            return false;
+        }
+        if (benson.isDead(board, point) || (provenDead != null && BitBoard.testBit(provenDead, point))) {
+            return true;
+        }
+        return isLikelyDeadByKataGo(string, color) || isCapturedByLadder(string, color);
+    }
+    
+    /**
+     * 对局面中被围在小块区域里、死活未定的棋串并行做死活搜索，守方先走也活不了的棋串记为已死
+     * 每块棋最多耗时TSUMEGO_MILLIS，应在后台线程调用，求解结果在判断同一局面时生效
+     * @return 得到了新局面的结果时返回true，调用方应重新判断形势
+     */
+    public synchronized boolean solveEnclosedStrings(BoardSnapshot snapshot) {
+        BitBoard position = snapshot.toBitBoard();
+        if (isSolved(position.getHash())) {
+            return false;
+        }
+        solverBenson.compute(position);
+        long[] dead = new long[position.getGeometry().words];
+        List<StoneString> strings = new ArrayList<>();
+        List<TsumegoSolver.Problem> problems = new ArrayList<>();
+        for (int color : new int[]{BLACK, WHITE}) {
+            for (StoneString string : position.getStrings(color)) {
+                int point = string.getPoints()[0];
+                if (solverBenson.isPassAlive(point) || solverBenson.isDead(position, point)) {
+                    continue;
+                }
+                long[] region = TsumegoSolver.enclosure(position, point);
+                if (region != null) {
+                    strings.add(string);
+                    problems.add(new TsumegoSolver.Problem(region, point, color));
+                }
+            }
+        }
+        if (!problems.isEmpty()) {
+            SOLVER.setTimeLimit(TSUMEGO_MILLIS);
+            List<TsumegoSolver.Result> results = SOLVER.solveAll(position, problems);
+            for (int k = 0; k < results.size(); k++) {
+                if (results.get(k) == TsumegoSolver.Result.DEAD) {
+                    for (int point : strings.get(k).getPoints()) {
+                        BitBoard.setBit(dead, point);
+                    }
+                }
             }
         }
+        proof = new Proof(position.getHash(), dead);
+        return true;
+    }
+    
+    /**
+     * 当前局面是否已经做过死活搜索
+     */
+    public boolean isSolved() {
+        return isSolved(game.getSnapshot().getHash());
+    }
+    
+    private boolean isSolved(long hash) {
+        Proof current = proof;
+        return current != null && current.hash == hash;
+    }
+    
+    /**
+     * 形势判断的结果是否对应当前局面，落子或悔棋后需要重新判断
+     */
+    public boolean isCurrent() {
+        return evaluated && evaluatedHash == game.getSnapshot().getHash();
+    }
+    
+    /**
+     * 全盘是否已定型：每个点都是无条件活的棋子或无条件的地，这时不需要引擎就能判断
+     */
+    public boolean isSettled() {
+        benson.compute(game.getSnapshot().toBitBoard());
+        return benson.isSettled();
     }
     
     /**
      * 使用KataGo的ownership来判断棋串是否已死
      */
-    private static boolean isLikelyDeadByKataGo(StoneString string, int color) {
+    private boolean isLikelyDeadByKataGo(StoneString string, int color) {
         double totalOwnership = 0;
         int stoneCount = 0;
         
         // 计算棋串所有棋子位置的ownership平均值
-        for (Stone stone : string.getStones()) {
-            int i = stone.getIndex().getJ();
-            int j = stone.getIndex().getI();
+        for (int point : string.getPoints()) {
+            int i = board.rowOf(point);
+            int j = board.colOf(point);
             totalOwnership += ownership[i][j];
             stoneCount++;
         }
@@ -155,34 +326,50 @@ public class PositionEvaluator {
         return (color == BLACK && avgOwnership > 0.5) || (color == WHITE && avgOwnership < -0.5);
     }
     
+    /**
+     * 判断棋串是否会被征吃：轮到自己时只剩一口气且逃不出，或轮到对方时只有两口气且能被征吃
+     */
+    private boolean isCapturedByLadder(StoneString string, int color) {
+        int point = string.getPoints()[0];
+        if (turn == color) {
+            return string.getLiberty() == 1 && ladder.isCaptured(board, point);
+        }
+        return string.getLiberty() == 2 && ladder.canCapture(board, point);
+    }
+    
     /**
      * 标记一个棋串为死子
      */
-    private static void markStringAsDead(StoneString string) {
-        for (Stone stone : string.getStones()) {
-            int i = stone.getIndex().getJ();
-            int j = stone.getIndex().getI();
-            deadStones[i][j] = true;
+    private void markStringAsDead(StoneString string) {
+        for (int point : string.getPoints()) {
+            deadStones[board.rowOf(point)][board.colOf(point)] = true;
+            BitBoard.setBit(deadMask, point);
         }
     }
     
     /**
-     * 使用KataGo的ownership来确定领地归属
+     * 按Tromp-Taylor规则数子确定领地归属
+     * 死子当作空点，只与一方活棋相邻的空区域归该方；没有定型的区域用KataGo的ownership显示强度，但不计入领地
      */
-    private static void determineTerritoriesFromKataGo() {
-        for (int i = 1; i <= BOARD_SIZE; i++) {
-            for (int j = 1; j <= BOARD_SIZE; j++) {
-                if (Board.state[i][j] == EMPTY) {
+    private void determineTerritories() {
+        scorer.score(board, deadMask);
+        blackArea = scorer.getBlackScore();
+        whiteArea = scorer.getWhiteScore();
+        for (int i = 1; i <= boardSize; i++) {
+            for (int j = 1; j <= boardSize; j++) {
+                if (board.get(i, j) != EMPTY && !deadStones[i][j]) {
+                    continue;
+                }
+                int owner = scorer.getOwner(board.point(i, j));
+                if (owner == BLACK) {
+                    territoryMap[i][j] = -100;
+                    blackTerritory++;
+                } else if (owner == WHITE) {
+                    territoryMap[i][j] = 100;
+                    whiteTerritory++;
+                } else if (board.get(i, j) == EMPTY) {
                     // 将KataGo的ownership值（-1到1）转换为我们的领地强度值（-100到100）
-                    int strength = (int)(ownership[i][j] * 100);
-                    territoryMap[i][j] = strength;
-                    
-                    // 统计领地数量
-                    if (strength < 0) {
-                        blackTerritory++;
-                    } else if (strength > 0) {
-                        whiteTerritory++;
-                    }
+                    territoryMap[i][j] = (int)(ownership[i][j] * 100);
                 }
             }
         }
@@ -192,8 +379,8 @@ public class PositionEvaluator {
      * 计算最终得分
      * 包括：领地 + 提子数 + 贴目
      */
-    private static void calculateScore() {
-        // 已经在determineTerritoriesFromKataGo中计算领地
+    private void calculateScore() {
+        // 已经在determineTerritories中计算领地和数子结果
         // 已经在detectDeadStones中计算提子数
         // 贴目会在返回结果时考虑
     }
@@ -201,9 +388,9 @@ public class PositionEvaluator {
     /**
      * 获取适合显示的领地颜色
      */
-    public static Color getTerritoryColor(int i, int j) {
+    public Color getTerritoryColor(int i, int j) {
         // 如果有棋子，不显示领地颜色
-        if (Board.state[i][j] != EMPTY) {
+        if (board != null && board.get(i, j) != EMPTY) {
             if (deadStones[i][j]) {
                 // 死子用红色标记
                 return new Color(255, 0, 0, 100);
@@ -228,19 +415,32 @@ public class PositionEvaluator {
     
     /**
      * 获取KataGo建议的最佳落子点
+     * 结果按棋盘哈希缓存，重绘时不再重复扫描整个棋盘
      * @return 返回最佳落子点的位置
      */
-    public static Position getBestMove() {
+    public Position getBestMove() {
+        BoardSnapshot snapshot = game.getSnapshot();
+        long hash = snapshot.getHash();
+        if (!bestMoveValid || bestMoveHash != hash) {
+            bestMove = findBestMove(snapshot);
+            bestMoveHash = hash;
+            bestMoveValid = true;
+        }
+        return bestMove;
+    }
+    
+    //在policy中找值最大的空点
+    private Position findBestMove(BoardSnapshot snapshot) {
         // 找到policy值最大的空点
         double maxPolicy = -1.0;
         Position bestMove = null;
         
         System.out.println("开始寻找最佳落子点...");
         
-        for (int i = 1; i <= BOARD_SIZE; i++) {
-            for (int j = 1; j <= BOARD_SIZE; j++) {
+        for (int i = 1; i <= boardSize; i++) {
+            for (int j = 1; j <= boardSize; j++) {
                 // 只在空点中寻找
-                if (Board.state[i][j] == EMPTY) {
+                if (snapshot.get(i, j) == EMPTY) {
                     // 检查policy值是否有效
                     if (Double.isNaN(policy[i][j]) || Double.isInfinite(policy[i][j])) {
                         continue;
@@ -248,7 +448,7 @@ public class PositionEvaluator {
                     
                     if (policy[i][j] > maxPolicy) {
                         maxPolicy = policy[i][j];
-                        bestMove = new Position(j, i);
+                        bestMove = Position.of(j, i);
                     }
                 }
             }
@@ -266,9 +466,22 @@ public class PositionEvaluator {
     /**
      * 判断位置是否在有效范围内
      */
-    private static boolean isValidPosition(Position pos) {
+    private boolean isValidPosition(Position pos) {
         int i = pos.getI();
         int j = pos.getJ();
-        return i >= 1 && i <= BOARD_SIZE && j >= 1 && j <= BOARD_SIZE;
+        return i >= 1 && i <= boardSize && j >= 1 && j <= boardSize;
+    }
+
+    /**
+     * 一个局面的死活搜索结果
+     */
+    private static final class Proof {
+        private final long hash;
+        private final long[] dead;
+        
+        Proof(long hash, long[] dead) {
+            this.hash = hash;
+            this.dead = dead;
+        }
     }
-} 
\ No newline at end of file
+}